@@ -9,8 +9,11 @@ import net.minecraftforge.fml.common.Mod.EventHandler;
 import net.minecraftforge.fml.common.Mod.Instance;
 import net.minecraftforge.fml.common.SidedProxy;
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
+import net.minecraftforge.fml.common.event.FMLLoadCompleteEvent;
 import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
+import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
+import net.minecraftforge.fml.common.event.FMLServerStoppingEvent;
 import net.minecraftforge.fml.common.network.NetworkRegistry;
 import net.minecraftforge.fml.common.network.simpleimpl.SimpleNetworkWrapper;
 
@@ -70,4 +73,22 @@ public class ModUncrafting
 		proxy.postInit();
 	}
 
+	@EventHandler
+	public void loadComplete(FMLLoadCompleteEvent event)
+	{
+		proxy.loadComplete();
+	}
+
+	@EventHandler
+	public void serverStarting(FMLServerStartingEvent event)
+	{
+		proxy.serverStarting(event);
+	}
+
+	@EventHandler
+	public void serverStopping(FMLServerStoppingEvent event)
+	{
+		proxy.serverStopping();
+	}
+
 }
\ No newline at end of file
@@ -35,6 +35,7 @@ public class ModGuiConfig extends GuiConfig
 
 		// second level settings
 		list.add(new DummyCategoryElement("nuggetsConfigDummyElement", "uncrafting.options.nuggets", CategoryEntryNuggets.class));
+		list.add(new DummyCategoryElement("performanceConfigDummyElement", "uncrafting.options.performance", CategoryEntryPerformance.class));
 
 		return list;
 	}
@@ -67,4 +68,32 @@ public class ModGuiConfig extends GuiConfig
 		}
 	}
 
+
+	public static class CategoryEntryPerformance extends CategoryEntry
+	{
+
+		public CategoryEntryPerformance(GuiConfig owningScreen, GuiConfigEntries owningEntryList, IConfigElement configElement)
+		{
+			super(owningScreen, owningEntryList, configElement);
+		}
+
+		@Override
+		protected GuiScreen buildChildScreen()
+		{
+			Configuration configuration = ModConfiguration.getConfig();
+			ConfigElement configurationCategory = new ConfigElement(configuration.getCategory(ModConfiguration.CATEGORY_PERFORMANCE));
+			List<IConfigElement> propertiesOnThisScreen = configurationCategory.getChildElements();
+			String windowTitle = I18n.format("uncrafting.options.performance");
+
+			return new GuiConfig(this.owningScreen, propertiesOnThisScreen,
+				this.owningScreen.modID,
+				ModConfiguration.CATEGORY_PERFORMANCE,
+				this.configElement.requiresWorldRestart() || this.owningScreen.allRequireWorldRestart,
+				this.configElement.requiresMcRestart() || this.owningScreen.allRequireMcRestart,
+				windowTitle
+			);
+
+		}
+	}
+
 }
\ No newline at end of file
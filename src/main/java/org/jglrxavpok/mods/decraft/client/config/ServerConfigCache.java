@@ -0,0 +1,116 @@
+package org.jglrxavpok.mods.decraft.client.config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+import org.jglrxavpok.mods.decraft.ModUncrafting;
+import org.jglrxavpok.mods.decraft.common.network.message.ConfigSyncMessage;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ServerData;
+import net.minecraftforge.fml.common.Loader;
+
+
+/**
+ * Keeps a copy of the configuration values last received from each server, so that they don't need to be sent again when the player
+ * reconnects to a server whose configuration hasn't changed. Each server's file contains the fingerprint of the values followed by
+ * the compressed values, exactly as they were received.
+ *
+ */
+public class ServerConfigCache
+{
+
+	private static final int MAGIC = 0x55435343; // "UCSC"
+
+
+	/**
+	 * Returns the cache file for the server the client is connected to, or null if it isn't connected to a remote server
+	 */
+	private static File getCacheFile()
+	{
+		ServerData serverData = Minecraft.getMinecraft().getCurrentServerData();
+		if (serverData == null || serverData.serverIP == null) return null;
+
+		String fileName = serverData.serverIP.toLowerCase().replaceAll("[^a-z0-9._-]", "_") + ".bin";
+		return new File(new File(new File(Loader.instance().getConfigDir(), ModUncrafting.MODID), "servers"), fileName);
+	}
+
+
+	/**
+	 * Loads the cached configuration values for the current server.
+	 * @return The cached values, or null if there are no cached values for the server or they don't match the fingerprint
+	 */
+	public static ConfigSyncMessage load(long fingerprint)
+	{
+		File cacheFile = getCacheFile();
+		if (cacheFile == null || !cacheFile.isFile()) return null;
+
+		try
+		{
+			byte[] compressedPayload;
+			DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+			try
+			{
+				if (input.readInt() != MAGIC || input.readLong() != fingerprint) return null;
+
+				// a damaged file may have any length, which is treated as the file not being there
+				int length = input.readInt();
+				if (length < 0 || length > ConfigSyncMessage.MAX_PAYLOAD_SIZE) return null;
+
+				compressedPayload = new byte[length];
+				input.readFully(compressedPayload);
+			}
+			finally
+			{
+				input.close();
+			}
+
+			// make sure the file hasn't been damaged since it was saved
+			ConfigSyncMessage message = ConfigSyncMessage.fromCompressedPayload(compressedPayload);
+			return (message.getFingerprint() == fingerprint ? message : null);
+		}
+		catch (Exception ex)
+		{
+			ModUncrafting.instance.getLogger().warn("Unable to load the cached server config from " + cacheFile.getName(), ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the configuration values received from the current server
+	 */
+	public static void save(ConfigSyncMessage message)
+	{
+		File cacheFile = getCacheFile();
+		if (cacheFile == null) return;
+
+		try
+		{
+			cacheFile.getParentFile().mkdirs();
+
+			byte[] compressedPayload = message.getCompressedPayload();
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)));
+			try
+			{
+				output.writeInt(MAGIC);
+				output.writeLong(message.getFingerprint());
+				output.writeInt(compressedPayload.length);
+				output.write(compressedPayload);
+			}
+			finally
+			{
+				output.close();
+			}
+		}
+		catch (Exception ex)
+		{
+			ModUncrafting.instance.getLogger().warn("Unable to save the cached server config to " + cacheFile.getName(), ex);
+		}
+	}
+
+}
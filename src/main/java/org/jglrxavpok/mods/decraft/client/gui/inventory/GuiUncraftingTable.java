@@ -1,5 +1,7 @@
 package org.jglrxavpok.mods.decraft.client.gui.inventory;
 
+import java.io.IOException;
+
 import org.jglrxavpok.mods.decraft.ModUncrafting;
 import org.jglrxavpok.mods.decraft.common.network.message.RecipeNavigationMessage;
 import org.jglrxavpok.mods.decraft.inventory.ContainerUncraftingTable;
@@ -14,6 +16,7 @@ import net.minecraft.client.resources.I18n;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.InventoryPlayer;
 import net.minecraft.init.Items;
+import net.minecraft.inventory.ClickType;
 import net.minecraft.inventory.Slot;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
@@ -32,6 +35,11 @@ public class GuiUncraftingTable extends GuiContainer
 	private GuiButton previousRecipeButton;
 	private GuiButton nextRecipeButton;
 
+	/** the number of ticks after the last recipe change before the selected recipe is sent to the server */
+	private static final int NAVIGATION_DELAY = 8;
+	/** the number of ticks remaining until the selected recipe is sent to the server, or zero if it has been sent */
+	private int navigationTicks = 0;
+
 	public GuiUncraftingTable(InventoryPlayer playerInventory, World world)
 	{
 		super(new ContainerUncraftingTable(playerInventory, world));
@@ -68,6 +76,9 @@ public class GuiUncraftingTable extends GuiContainer
 	{
 		super.updateScreen();
 
+		// send the selected recipe to the server once the player has stopped changing it
+		if (this.navigationTicks > 0 && --this.navigationTicks == 0) sendSelectedRecipe();
+
 		boolean haveMultipleRecipes = (container.uncraftingResult.getRecipeCount() > 1);
 		boolean hasNextRecipe = (container.uncraftingResult.selectedCraftingGrid < (container.uncraftingResult.getRecipeCount() - 1));
 		boolean hasPreviousRecipe = (container.uncraftingResult.selectedCraftingGrid > 0);
@@ -86,23 +97,65 @@ public class GuiUncraftingTable extends GuiContainer
 	{
 		if (button == this.previousRecipeButton || button == this.nextRecipeButton)
 		{
+			int recipeIndex = container.uncraftingResult.selectedCraftingGrid;
 			if (button == this.previousRecipeButton)
 			{
-				if (container.uncraftingResult.selectedCraftingGrid == 0) return;
-				container.uncraftingResult.selectedCraftingGrid--;
+				if (recipeIndex == 0) return;
+				recipeIndex--;
 			}
 			if (button == this.nextRecipeButton)
 			{
-				if (container.uncraftingResult.selectedCraftingGrid == (container.uncraftingResult.getRecipeCount() - 1)) return;
-				container.uncraftingResult.selectedCraftingGrid++;
+				if (recipeIndex == (container.uncraftingResult.getRecipeCount() - 1)) return;
+				recipeIndex++;
 			}
-			container.switchRecipe();
 
-			int recipeIndex = container.uncraftingResult.selectedCraftingGrid;
-			ModUncrafting.instance.getNetwork().sendToServer(new RecipeNavigationMessage(recipeIndex));
+			// show the recipe straight away, but wait for the player to stop clicking before telling the server
+			container.previewRecipe(recipeIndex);
+			this.navigationTicks = NAVIGATION_DELAY;
 		}
 	}
 
+	private void sendSelectedRecipe()
+	{
+		this.navigationTicks = 0;
+
+		int recipeIndex = container.uncraftingResult.selectedCraftingGrid;
+		ModUncrafting.instance.getNetwork().sendToServer(new RecipeNavigationMessage(recipeIndex));
+	}
+
+
+	/**
+	 * Called when the mouse is clicked on a slot or when a key is pressed over a slot.
+	 */
+	@Override
+	protected void handleMouseClick(Slot slotIn, int slotId, int mouseButton, ClickType type)
+	{
+		// the server must have switched to the selected recipe before the player can interact with the slots
+		if (this.navigationTicks > 0) sendSelectedRecipe();
+		super.handleMouseClick(slotIn, slotId, mouseButton, type);
+	}
+
+	/**
+	 * Fired when a key is typed.
+	 */
+	@Override
+	protected void keyTyped(char typedChar, int keyCode) throws IOException
+	{
+		// the key may close the screen, in which case the selected recipe must reach the server before the container is closed
+		if (this.navigationTicks > 0) sendSelectedRecipe();
+		super.keyTyped(typedChar, keyCode);
+	}
+
+	/**
+	 * Called when the screen is unloaded.
+	 */
+	@Override
+	public void onGuiClosed()
+	{
+		if (this.navigationTicks > 0) sendSelectedRecipe();
+		super.onGuiClosed();
+	}
+
 
 	private void drawUncraftingStatusMessage()
 	{
@@ -118,6 +171,11 @@ public class GuiUncraftingTable extends GuiContainer
 				}
 				break;
 
+			// if the recipes for the item are still being found, display a message to that effect
+			case PENDING:
+				statusMessage = I18n.format("uncrafting.result.pending");
+				break;
+
 			// if the item cannot be uncrafted, display a message to that effect
 			case NOT_UNCRAFTABLE:
 				statusMessage = I18n.format("uncrafting.result.impossible");
@@ -219,8 +277,8 @@ public class GuiUncraftingTable extends GuiContainer
 		GL11.glEnable(GL11.GL_LIGHTING);
 		GL11.glEnable(GL11.GL_DEPTH_TEST);
 
-		// if the uncrafting result's crafting grids collection isn't empty
-		if (container.uncraftingResult.renderBackgroundItems())
+		// if the uncrafting result's crafting grids collection isn't empty, or the player is previewing a different recipe
+		if (container.uncraftingResult.renderBackgroundItems() || container.isPreviewingRecipe())
 		{
 			// get the currently selected crafting grid
 			NonNullList<ItemStack> craftingGrid = container.uncraftingResult.getCraftingGrid();
@@ -0,0 +1,103 @@
+package org.jglrxavpok.mods.decraft.common.command;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.jglrxavpok.mods.decraft.ModUncrafting;
+import org.jglrxavpok.mods.decraft.item.uncrafting.RecipeIndex;
+import org.jglrxavpok.mods.decraft.item.uncrafting.UncraftingResultCache;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.command.WrongUsageException;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.TextComponentTranslation;
+
+
+/**
+ * Admin command for managing the uncrafting table's recipe lookup structures.
+ * /uncrafting reload - rebuilds the recipe index from the current crafting recipes
+ * /uncrafting stats - displays the result cache counters
+ *
+ */
+public class CommandUncrafting extends CommandBase
+{
+
+	@Override
+	public String getName()
+	{
+		return "uncrafting";
+	}
+
+	@Override
+	public String getUsage(ICommandSender sender)
+	{
+		return "commands.uncrafting.usage";
+	}
+
+	@Override
+	public int getRequiredPermissionLevel()
+	{
+		return 3;
+	}
+
+	@Override
+	public void execute(final MinecraftServer server, final ICommandSender sender, String[] args) throws CommandException
+	{
+		if (args.length == 1 && args[0].equals("reload"))
+		{
+			sender.sendMessage(new TextComponentTranslation("commands.uncrafting.reload.started"));
+
+			// rebuild the index in the background, and report back on the server thread once it's done
+			Futures.addCallback(RecipeIndex.scheduleRebuild(true), new FutureCallback<RecipeIndex>()
+			{
+				@Override
+				public void onSuccess(final RecipeIndex recipeIndex)
+				{
+					server.addScheduledTask(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							notifyCommandListener(sender, CommandUncrafting.this, "commands.uncrafting.reload.success", recipeIndex.getRecipeCount(), recipeIndex.getOutputCount(), recipeIndex.getBuildTime());
+						}
+					});
+				}
+
+				@Override
+				public void onFailure(Throwable ex)
+				{
+					ModUncrafting.instance.getLogger().error("Unable to rebuild the recipe index", ex);
+					server.addScheduledTask(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							sender.sendMessage(new TextComponentTranslation("commands.uncrafting.reload.failure"));
+						}
+					});
+				}
+			});
+		}
+		else if (args.length == 1 && args[0].equals("stats"))
+		{
+			CacheStats stats = UncraftingResultCache.getStats();
+			sender.sendMessage(new TextComponentTranslation("commands.uncrafting.stats", UncraftingResultCache.getSize(), stats.hitCount(), stats.missCount(), stats.evictionCount()));
+		}
+		else throw new WrongUsageException(getUsage(sender));
+	}
+
+	@Override
+	public List<String> getTabCompletions(MinecraftServer server, ICommandSender sender, String[] args, BlockPos pos)
+	{
+		if (args.length == 1) return getListOfStringsMatchingLastWord(args, "reload", "stats");
+		return Collections.<String>emptyList();
+	}
+
+}
@@ -0,0 +1,259 @@
+package org.jglrxavpok.mods.decraft.common.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import org.jglrxavpok.mods.decraft.ModUncrafting;
+import org.jglrxavpok.mods.decraft.common.network.message.ConfigSyncMessage;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraftforge.common.config.Configuration;
+
+
+/**
+ * Watches the configuration file while a server is running, and reloads it when it's changed, so that a dedicated server doesn't need
+ * to be restarted to change the configuration. Changes are debounced, so that an editor which writes the file several times only causes
+ * a single reload, and changes made by the mod saving the file itself are ignored. The file is parsed on the watcher thread, and the new
+ * values are then applied on the server thread (along with discarding anything derived from the old values), and sent to the connected
+ * players if they've changed. If the file can't be parsed, the current values are kept.
+ *
+ */
+public class ConfigFileWatcher
+{
+
+	/** the time for which the file must be left unchanged before it's reloaded */
+	private static final long DEBOUNCE_MILLIS = 500;
+
+	private static WatchService watchService = null;
+
+	/** a hash of the contents of the file when it was last saved by the mod or reloaded, so that the same contents aren't reloaded again */
+	private static volatile long knownContentsHash = 0;
+
+
+	/**
+	 * Starts watching the configuration file for the given server
+	 */
+	public static synchronized void start(final MinecraftServer server)
+	{
+		if (watchService != null) return;
+
+		final Path configPath = ModConfiguration.getConfig().getConfigFile().toPath().toAbsolutePath();
+		// the file as it is now has already been loaded
+		onConfigSaved(configPath.toFile());
+
+		try
+		{
+			watchService = FileSystems.getDefault().newWatchService();
+			configPath.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+		catch (IOException ex)
+		{
+			ModUncrafting.instance.getLogger().warn("Unable to watch the configuration file for changes", ex);
+			stop();
+			return;
+		}
+
+		final WatchService service = watchService;
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				watch(service, configPath, server);
+			}
+		}, ModUncrafting.MODID + "-config-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops watching the configuration file, which also ends the watcher thread
+	 */
+	public static synchronized void stop()
+	{
+		if (watchService == null) return;
+
+		try
+		{
+			watchService.close();
+		}
+		catch (IOException ex)
+		{
+		}
+		watchService = null;
+	}
+
+
+	private static void watch(WatchService service, Path configPath, MinecraftServer server)
+	{
+		try
+		{
+			while (true)
+			{
+				// wait for the configuration file to be changed
+				if (!pollConfigChanged(service.take(), configPath)) continue;
+
+				// then wait until it hasn't been changed for a while
+				WatchKey key;
+				while ((key = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null)
+				{
+					pollConfigChanged(key, configPath);
+				}
+
+				reload(configPath, server);
+			}
+		}
+		catch (InterruptedException ex)
+		{
+		}
+		catch (ClosedWatchServiceException ex)
+		{
+		}
+	}
+
+	/**
+	 * Returns true if any of the events for a watch key are for the configuration file, and resets the key
+	 */
+	private static boolean pollConfigChanged(WatchKey key, Path configPath)
+	{
+		boolean configChanged = false;
+		for ( WatchEvent<?> event : key.pollEvents() )
+		{
+			if (event.context() instanceof Path && configPath.getFileName().equals(event.context())) configChanged = true;
+		}
+		key.reset();
+		return configChanged;
+	}
+
+
+	/**
+	 * Records the contents of the configuration file after the mod has saved it, so that the save doesn't cause a reload
+	 */
+	public static void onConfigSaved(File configFile)
+	{
+		try
+		{
+			knownContentsHash = hashContents(Files.readAllBytes(configFile.toPath()));
+		}
+		catch (IOException ex)
+		{
+		}
+	}
+
+
+	private static void reload(Path configPath, MinecraftServer server)
+	{
+		byte[] contents;
+		try
+		{
+			contents = Files.readAllBytes(configPath);
+		}
+		catch (IOException ex)
+		{
+			ModUncrafting.instance.getLogger().warn("Unable to read the configuration file, keeping the current values", ex);
+			return;
+		}
+
+		// ignore the change if it was made by the mod saving the file, or if the contents are the same as when they were last reloaded
+		long contentsHash = hashContents(contents);
+		if (contentsHash == knownContentsHash) return;
+
+		// parse the file into a separate configuration here, so that nothing which the server is using is touched off the server thread
+		final Configuration loadedConfig = parse(contents);
+		if (loadedConfig == null)
+		{
+			ModUncrafting.instance.getLogger().warn("Unable to parse the configuration file, keeping the current values");
+			return;
+		}
+		knownContentsHash = contentsHash;
+
+		server.addScheduledTask(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				apply(loadedConfig);
+			}
+		});
+	}
+
+	/**
+	 * Parses the contents of the configuration file, without touching the file itself.
+	 * @return The loaded configuration, or null if the contents can't be parsed or are missing any of the mod's categories (e.g. because the file is only partly written)
+	 */
+	private static Configuration parse(byte[] contents)
+	{
+		// if Forge can't parse a configuration file it renames it and creates a new file with the default values, so a copy of the file is
+		// parsed in a directory of its own, and a renamed copy shows that it couldn't be parsed
+		File tempDirectory = null;
+		try
+		{
+			tempDirectory = Files.createTempDirectory(ModUncrafting.MODID + "-config").toFile();
+			File tempFile = new File(tempDirectory, ModUncrafting.MODID + ".cfg");
+			Files.write(tempFile.toPath(), contents);
+
+			Configuration loadedConfig = new Configuration(tempFile);
+
+			String[] tempFiles = tempDirectory.list();
+			if (tempFiles == null || tempFiles.length != 1) return null;
+			if (!loadedConfig.hasCategory(Configuration.CATEGORY_GENERAL) || !loadedConfig.hasCategory(ModConfiguration.CATEGORY_NUGGETS) || !loadedConfig.hasCategory(ModConfiguration.CATEGORY_PERFORMANCE)) return null;
+			return loadedConfig;
+		}
+		catch (Exception ex)
+		{
+			ModUncrafting.instance.getLogger().warn("Unable to parse the configuration file", ex);
+			return null;
+		}
+		finally
+		{
+			if (tempDirectory != null)
+			{
+				File[] tempFiles = tempDirectory.listFiles();
+				if (tempFiles != null)
+				{
+					for ( File tempFile : tempFiles ) tempFile.delete();
+				}
+				tempDirectory.delete();
+			}
+		}
+	}
+
+	private static long hashContents(byte[] contents)
+	{
+		// 64-bit FNV-1a
+		long hash = 0xcbf29ce484222325L;
+		for ( byte b : contents )
+		{
+			hash ^= (b & 0xFF);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Applies the reloaded configuration on the server thread, and sends the values to the players if any of the values which are sent have changed
+	 */
+	private static void apply(Configuration loadedConfig)
+	{
+		long previousFingerprint = new ConfigSyncMessage().getFingerprint();
+
+		ModConfiguration.syncFromLoadedConfig(loadedConfig);
+		ModUncrafting.instance.getLogger().info("Reloaded the configuration file");
+
+		// compile the new excluded items list now, rather than during the next lookup
+		ExcludedItemsMatcher.compile();
+
+		ConfigSyncMessage message = new ConfigSyncMessage();
+		if (message.getFingerprint() != previousFingerprint) ModUncrafting.instance.getNetwork().sendToAll(message);
+	}
+
+}
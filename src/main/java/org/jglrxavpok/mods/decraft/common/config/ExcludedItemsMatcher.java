@@ -0,0 +1,166 @@
+package org.jglrxavpok.mods.decraft.common.config;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.jglrxavpok.mods.decraft.ModUncrafting;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.oredict.OreDictionary;
+
+
+/**
+ * Compiled form of the excluded items list, which allows an item stack to be checked against the list without any allocation.
+ * Each entry in the list can be one of:
+ * <ul>
+ * <li><code>modid:item</code> - all metadata values of an item</li>
+ * <li><code>modid:item,3</code> - a single metadata (or damage) value of an item</li>
+ * <li><code>modid:item,2-7</code> - an inclusive range of metadata (or damage) values of an item</li>
+ * <li><code>modid:*</code> - all of the items added by a mod</li>
+ * <li><code>oreName</code> - all of the items registered in the ore dictionary with the given name</li>
+ * </ul>
+ * The list is compiled the first time it's needed after the configuration changes, so that the item registry and ore dictionary are complete.
+ *
+ */
+public class ExcludedItemsMatcher
+{
+
+	private static volatile ExcludedItemsMatcher instance = null;
+
+
+	private final Set<Item> excludedItems = Collections.newSetFromMap(new IdentityHashMap<Item, Boolean>());
+	private final Map<Item, BitSet> excludedMetadata = new IdentityHashMap<Item, BitSet>();
+
+
+	private ExcludedItemsMatcher(String[] entries)
+	{
+		Set<String> excludedMods = new HashSet<String>();
+
+		for ( String entry : entries )
+		{
+			entry = entry.trim();
+			if (entry.isEmpty()) continue;
+
+			try
+			{
+				if (entry.indexOf(':') < 0) addOreName(entry);
+				else if (entry.endsWith(":*")) excludedMods.add(entry.substring(0, entry.length() - 2));
+				else addItem(entry);
+			}
+			catch (NumberFormatException ex)
+			{
+				ModUncrafting.instance.getLogger().warn("Invalid metadata in excluded item entry \"" + entry + "\"");
+			}
+		}
+
+		// resolve the mod id wildcards into the items added by each mod
+		if (!excludedMods.isEmpty())
+		{
+			for ( Item item : Item.REGISTRY )
+			{
+				if (excludedMods.contains(item.getRegistryName().getResourceDomain())) excludedItems.add(item);
+			}
+		}
+	}
+
+	private void addItem(String entry)
+	{
+		String itemName = entry;
+		int minMetadata = -1;
+		int maxMetadata = -1;
+
+		int comma = entry.indexOf(',');
+		if (comma >= 0)
+		{
+			itemName = entry.substring(0, comma).trim();
+			String metadata = entry.substring(comma + 1).trim();
+
+			int dash = metadata.indexOf('-', 1);
+			if (dash >= 0)
+			{
+				minMetadata = Integer.parseInt(metadata.substring(0, dash).trim());
+				maxMetadata = Integer.parseInt(metadata.substring(dash + 1).trim());
+			}
+			else minMetadata = maxMetadata = Integer.parseInt(metadata);
+
+			if (minMetadata < 0 || maxMetadata < minMetadata) throw new NumberFormatException();
+		}
+
+		Item item = Item.REGISTRY.getObject(new ResourceLocation(itemName));
+		if (item == null) return; // the item may belong to a mod which isn't installed
+
+		if (minMetadata < 0) excludedItems.add(item);
+		else addMetadata(item, minMetadata, maxMetadata);
+	}
+
+	private void addOreName(String oreName)
+	{
+		for ( ItemStack ore : OreDictionary.getOres(oreName, false) )
+		{
+			if (ore.getItemDamage() == OreDictionary.WILDCARD_VALUE) excludedItems.add(ore.getItem());
+			else addMetadata(ore.getItem(), ore.getItemDamage(), ore.getItemDamage());
+		}
+	}
+
+	private void addMetadata(Item item, int minMetadata, int maxMetadata)
+	{
+		BitSet metadata = excludedMetadata.get(item);
+		if (metadata == null)
+		{
+			metadata = new BitSet();
+			excludedMetadata.put(item, metadata);
+		}
+		metadata.set(minMetadata, maxMetadata + 1);
+	}
+
+
+	/**
+	 * Returns true if the item in the stack is excluded from uncrafting by the configuration
+	 */
+	public static boolean isExcluded(ItemStack itemStack)
+	{
+		ExcludedItemsMatcher matcher = instance;
+		if (matcher == null)
+		{
+			matcher = new ExcludedItemsMatcher(ModConfiguration.excludedItems);
+			instance = matcher;
+		}
+
+		Item item = itemStack.getItem();
+		if (matcher.excludedItems.contains(item)) return true;
+
+		BitSet metadata = matcher.excludedMetadata.get(item);
+		return (metadata != null && metadata.get(itemStack.getItemDamage()));
+	}
+
+	/**
+	 * Compiles the list from the configuration straight away, rather than the next time it's needed.
+	 */
+	public static void compile()
+	{
+		instance = new ExcludedItemsMatcher(ModConfiguration.excludedItems);
+	}
+
+	/**
+	 * Compiles the list from the configuration if it has been discarded, so that isExcluded doesn't have to compile it
+	 */
+	public static void ensureCompiled()
+	{
+		if (instance == null) compile();
+	}
+
+	/**
+	 * Discards the compiled list, so that it's compiled again from the configuration the next time it's needed.
+	 */
+	public static void invalidate()
+	{
+		instance = null;
+	}
+
+}
@@ -3,14 +3,22 @@ package org.jglrxavpok.mods.decraft.common.config;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.jglrxavpok.mods.decraft.ModUncrafting;
 import org.jglrxavpok.mods.decraft.client.config.ModGuiConfigEntries;
+import org.jglrxavpok.mods.decraft.common.network.message.ConfigHashMessage;
 import org.jglrxavpok.mods.decraft.common.network.message.ConfigSyncMessage;
+import org.jglrxavpok.mods.decraft.item.uncrafting.AsyncUncraftingResolver;
+import org.jglrxavpok.mods.decraft.item.uncrafting.DamageTable;
+import org.jglrxavpok.mods.decraft.item.uncrafting.NuggetTable;
+import org.jglrxavpok.mods.decraft.item.uncrafting.RecipeIndex;
+import org.jglrxavpok.mods.decraft.item.uncrafting.UncraftingResultCache;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.common.config.ConfigCategory;
 import net.minecraftforge.common.config.Configuration;
 import net.minecraftforge.common.config.Property;
 import net.minecraftforge.fml.client.config.GuiConfigEntries.NumberSliderEntry;
@@ -18,6 +26,7 @@ import net.minecraftforge.fml.client.event.ConfigChangedEvent;
 import net.minecraftforge.fml.common.Loader;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedInEvent;
+import net.minecraftforge.oredict.OreDictionary;
 
 
 public class ModConfiguration
@@ -26,6 +35,7 @@ public class ModConfiguration
 	private static Configuration config = null;
 
 	public static final String CATEGORY_NUGGETS = "nuggets";
+	public static final String CATEGORY_PERFORMANCE = "performance";
 
 
 	public static int standardLevel = 5;
@@ -39,6 +49,11 @@ public class ModConfiguration
 	public static boolean useRabbitHide = false;
 	public static boolean ensureReturn = true;
 
+	public static int resultCacheSize = 2048;
+	public static int recipeAnalysisThreads = 0;
+	public static boolean useIndexSnapshot = true;
+	public static int asyncResolutionThreads = 0;
+
 
 	public static void preInit()
 	{
@@ -68,6 +83,26 @@ public class ModConfiguration
 		syncConfig(true, true);
 	}
 
+	/**
+	 * Copies the values of a configuration which has already been loaded from a copy of the file (e.g. on another thread) into the
+	 * configuration, and reads them
+	 */
+	public static void syncFromLoadedConfig(Configuration loadedConfig)
+	{
+		synchronized (ModConfiguration.class)
+		{
+			for ( String categoryName : loadedConfig.getCategoryNames() )
+			{
+				ConfigCategory category = config.getCategory(categoryName);
+				for ( Map.Entry<String, Property> entry : loadedConfig.getCategory(categoryName).entrySet() )
+				{
+					category.put(entry.getKey(), entry.getValue());
+				}
+			}
+			syncConfig(false, true);
+		}
+	}
+
 	public static void syncFromGUI()
 	{
 		syncConfig(false, true);
@@ -79,7 +114,7 @@ public class ModConfiguration
 	}
 
 
-	private static void syncConfig(boolean loadConfigFromFile, boolean readFieldsFromConfig)
+	private static synchronized void syncConfig(boolean loadConfigFromFile, boolean readFieldsFromConfig)
 	{
 
 		if (loadConfigFromFile) config.load();
@@ -101,7 +136,7 @@ public class ModConfiguration
 		propUncraftMethod.setValidValues(new String[] { "jglrxavpok", "Xell75 & zenen" });
 		propUncraftMethod.setRequiresMcRestart(false);
 
-		Property propExcludedItems = config.get(Configuration.CATEGORY_GENERAL, "excludedItems", excludedItems, "List of items which cannot be uncrafted");
+		Property propExcludedItems = config.get(Configuration.CATEGORY_GENERAL, "excludedItems", excludedItems, "List of items which cannot be uncrafted, as modid:item, modid:item,metadata, modid:item,min-max, modid:* or an ore dictionary name");
 		propExcludedItems.setLanguageKey("uncrafting.options.excludedItems");
 		propExcludedItems.setRequiresMcRestart(false);
 
@@ -123,6 +158,22 @@ public class ModConfiguration
 		propEnsureReturn.setRequiresMcRestart(false);
 
 
+		Property propResultCacheSize = config.get(ModConfiguration.CATEGORY_PERFORMANCE, "resultCacheSize", resultCacheSize, "Maximum weight of the uncrafting result cache, where each cached item weighs one plus its number of recipes (0 to disable)", 0, 65536);
+		propResultCacheSize.setLanguageKey("uncrafting.options.performance.resultCacheSize");
+		propResultCacheSize.setRequiresMcRestart(false);
+
+		Property propRecipeAnalysisThreads = config.get(ModConfiguration.CATEGORY_PERFORMANCE, "recipeAnalysisThreads", recipeAnalysisThreads, "Number of threads used to analyse the crafting recipes when building the recipe index (0 to use one per processor, 1 to analyse sequentially)", 0, 64);
+		propRecipeAnalysisThreads.setLanguageKey("uncrafting.options.performance.recipeAnalysisThreads");
+		propRecipeAnalysisThreads.setRequiresMcRestart(false);
+
+		Property propUseIndexSnapshot = config.get(ModConfiguration.CATEGORY_PERFORMANCE, "useIndexSnapshot", useIndexSnapshot, "Save the recipe index when the server stops, and load it at startup instead of analysing the recipes again if the mod list hasn't changed");
+		propUseIndexSnapshot.setLanguageKey("uncrafting.options.performance.useIndexSnapshot");
+		propUseIndexSnapshot.setRequiresMcRestart(false);
+
+		Property propAsyncResolutionThreads = config.get(ModConfiguration.CATEGORY_PERFORMANCE, "asyncResolutionThreads", asyncResolutionThreads, "Number of worker threads used to find the recipes for the item in an uncrafting table off the server thread (0 to find them on the server thread)", 0, 16);
+		propAsyncResolutionThreads.setLanguageKey("uncrafting.options.performance.asyncResolutionThreads");
+		propAsyncResolutionThreads.setRequiresMcRestart(false);
+
 
 		try
 		{
@@ -137,6 +188,8 @@ public class ModConfiguration
 			propUseRabbitHide.setConfigEntryClass(ModGuiConfigEntries.BooleanEntry.class);
 			propEnsureReturn.setConfigEntryClass(ModGuiConfigEntries.BooleanEntry.class);
 
+			propUseIndexSnapshot.setConfigEntryClass(ModGuiConfigEntries.BooleanEntry.class);
+
 			List<String> propOrderGeneral = new ArrayList<String>();
 			propOrderGeneral.add(propStandardLevel.getName());
 			propOrderGeneral.add(propMaxLevel.getName());
@@ -152,6 +205,13 @@ public class ModConfiguration
 			propOrderNuggets.add(propEnsureReturn.getName());
 			config.setCategoryPropertyOrder(ModConfiguration.CATEGORY_NUGGETS, propOrderNuggets);
 
+			List<String> propOrderPerformance = new ArrayList<String>();
+			propOrderPerformance.add(propResultCacheSize.getName());
+			propOrderPerformance.add(propRecipeAnalysisThreads.getName());
+			propOrderPerformance.add(propUseIndexSnapshot.getName());
+			propOrderPerformance.add(propAsyncResolutionThreads.getName());
+			config.setCategoryPropertyOrder(ModConfiguration.CATEGORY_PERFORMANCE, propOrderPerformance);
+
 		}
 		catch(NoClassDefFoundError e) { }
 
@@ -168,6 +228,11 @@ public class ModConfiguration
 			registerNuggets = propRegisterNuggets.getBoolean();
 			useRabbitHide = propUseRabbitHide.getBoolean();
 			ensureReturn = propEnsureReturn.getBoolean();
+
+			resultCacheSize = propResultCacheSize.getInt();
+			recipeAnalysisThreads = propRecipeAnalysisThreads.getInt();
+			useIndexSnapshot = propUseIndexSnapshot.getBoolean();
+			asyncResolutionThreads = propAsyncResolutionThreads.getInt();
 		}
 
 
@@ -182,8 +247,33 @@ public class ModConfiguration
 		propUseRabbitHide.set(useRabbitHide);
 		propEnsureReturn.set(ensureReturn);
 
+		propResultCacheSize.set(resultCacheSize);
+		propRecipeAnalysisThreads.set(recipeAnalysisThreads);
+		propUseIndexSnapshot.set(useIndexSnapshot);
+		propAsyncResolutionThreads.set(asyncResolutionThreads);
+
+
+		if (config.hasChanged())
+		{
+			config.save();
+			ConfigFileWatcher.onConfigSaved(config.getConfigFile());
+		}
+
+		onConfigChanged();
+	}
+
 
-		if (config.hasChanged()) config.save();
+	/**
+	 * Discards anything derived from the configuration values, so that it's rebuilt using the new values.
+	 * Must be called whenever the values are changed.
+	 */
+	public static void onConfigChanged()
+	{
+		// the cached uncrafting results depend on the excluded items and the nugget options
+		ExcludedItemsMatcher.invalidate();
+		DamageTable.invalidateAll();
+		UncraftingResultCache.configure(resultCacheSize);
+		AsyncUncraftingResolver.configure(asyncResolutionThreads);
 	}
 
 
@@ -196,9 +286,20 @@ public class ModConfiguration
 		{
 			if (!event.player.world.isRemote)
 			{
-				ModUncrafting.instance.getNetwork().sendTo(new ConfigSyncMessage(), (EntityPlayerMP)event.player);
+				// the values are only sent if the client doesn't have a cached copy of them
+				ModUncrafting.instance.getNetwork().sendTo(new ConfigHashMessage(new ConfigSyncMessage().getFingerprint()), (EntityPlayerMP)event.player);
 			}
 		}
+
+		@SubscribeEvent
+		public void onOreRegister(OreDictionary.OreRegisterEvent event)
+		{
+			// the excluded items list may contain ore dictionary names, and the nugget table is built from the ore dictionary
+			ExcludedItemsMatcher.invalidate();
+			NuggetTable.invalidate();
+			// and ore recipes which were skipped because they had an empty ore list may now be usable
+			RecipeIndex.onOreRegistered();
+		}
 	}
 
 	public static class ClientConfigEventHandler
@@ -0,0 +1,62 @@
+package org.jglrxavpok.mods.decraft.common.network;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraftforge.fml.common.network.ByteBufUtils;
+
+
+/**
+ * Compact encoding of item stacks for the network messages. An empty stack is a single byte, the item id, count and metadata are varints,
+ * and the NBT data is only written if the stack has any. Only the NBT data which the item shares with the client is sent.
+ *
+ */
+public class ItemStackCodec
+{
+
+	private static final int MAX_VARINT_BYTES = 5;
+
+
+	public static void writeItemStack(ByteBuf buf, ItemStack itemStack)
+	{
+		// the item id is offset by one, so that zero can represent an empty stack
+		if (itemStack.isEmpty())
+		{
+			ByteBufUtils.writeVarInt(buf, 0, MAX_VARINT_BYTES);
+			return;
+		}
+		ByteBufUtils.writeVarInt(buf, Item.getIdFromItem(itemStack.getItem()) + 1, MAX_VARINT_BYTES);
+		ByteBufUtils.writeVarInt(buf, itemStack.getCount(), MAX_VARINT_BYTES);
+		ByteBufUtils.writeVarInt(buf, itemStack.getMetadata(), MAX_VARINT_BYTES);
+
+		// *** modified from PacketBuffer.writeItemStack ***
+		NBTTagCompound tag = null;
+		if (itemStack.getItem().isDamageable() || itemStack.getItem().getShareTag())
+		{
+			tag = itemStack.getItem().getNBTShareTag(itemStack);
+		}
+		// *** modified from PacketBuffer.writeItemStack ***
+
+		buf.writeBoolean(tag != null);
+		if (tag != null) ByteBufUtils.writeTag(buf, tag);
+	}
+
+	public static ItemStack readItemStack(ByteBuf buf)
+	{
+		int id = ByteBufUtils.readVarInt(buf, MAX_VARINT_BYTES);
+		if (id == 0) return ItemStack.EMPTY;
+
+		int count = ByteBufUtils.readVarInt(buf, MAX_VARINT_BYTES);
+		int metadata = ByteBufUtils.readVarInt(buf, MAX_VARINT_BYTES);
+		NBTTagCompound tag = (buf.readBoolean() ? ByteBufUtils.readTag(buf) : null);
+
+		Item item = Item.getItemById(id - 1);
+		if (item == null) return ItemStack.EMPTY;
+
+		ItemStack itemStack = new ItemStack(item, count, metadata);
+		itemStack.setTagCompound(tag);
+		return itemStack;
+	}
+
+}
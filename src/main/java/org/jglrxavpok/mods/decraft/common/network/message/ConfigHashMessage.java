@@ -0,0 +1,70 @@
+package org.jglrxavpok.mods.decraft.common.network.message;
+
+import org.jglrxavpok.mods.decraft.ModUncrafting;
+import org.jglrxavpok.mods.decraft.client.config.ServerConfigCache;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.client.Minecraft;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessageHandler;
+import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
+
+
+/**
+ * Sends the fingerprint of the server's configuration values to the client. The client applies its cached copy of the server's values
+ * if the fingerprint matches, and otherwise asks the server to send the values with a ConfigRequestMessage.
+ *
+ */
+public class ConfigHashMessage implements IMessage
+{
+
+	private long fingerprint;
+
+
+	public ConfigHashMessage()
+	{
+	}
+
+	public ConfigHashMessage(long fingerprint)
+	{
+		this.fingerprint = fingerprint;
+	}
+
+	@Override
+	public void fromBytes(ByteBuf buf)
+	{
+		this.fingerprint = buf.readLong();
+	}
+
+	@Override
+	public void toBytes(ByteBuf buf)
+	{
+		buf.writeLong(this.fingerprint);
+	}
+
+
+	public static final class MessageHandler implements IMessageHandler<ConfigHashMessage, IMessage>
+	{
+
+		@Override
+		public IMessage onMessage(final ConfigHashMessage message, MessageContext ctx)
+		{
+			Minecraft.getMinecraft().addScheduledTask(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					// the client already has the same values (which is always the case in singleplayer)
+					if (new ConfigSyncMessage().getFingerprint() == message.fingerprint) return;
+
+					ConfigSyncMessage cachedMessage = ServerConfigCache.load(message.fingerprint);
+					if (cachedMessage != null) cachedMessage.apply();
+					else ModUncrafting.instance.getNetwork().sendToServer(new ConfigRequestMessage());
+				}
+			});
+
+			return null;
+		}
+	}
+
+}
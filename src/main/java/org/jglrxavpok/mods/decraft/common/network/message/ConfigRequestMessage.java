@@ -0,0 +1,58 @@
+package org.jglrxavpok.mods.decraft.common.network.message;
+
+import org.jglrxavpok.mods.decraft.ModUncrafting;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.util.IThreadListener;
+import net.minecraft.world.WorldServer;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessageHandler;
+import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
+
+
+/**
+ * Asks the server to send its configuration values, when the client doesn't have a cached copy matching the server's fingerprint.
+ *
+ */
+public class ConfigRequestMessage implements IMessage
+{
+
+	public ConfigRequestMessage()
+	{
+	}
+
+	@Override
+	public void fromBytes(ByteBuf buf)
+	{
+	}
+
+	@Override
+	public void toBytes(ByteBuf buf)
+	{
+	}
+
+
+	public static final class MessageHandler implements IMessageHandler<ConfigRequestMessage, IMessage>
+	{
+
+		@Override
+		public IMessage onMessage(final ConfigRequestMessage message, MessageContext ctx)
+		{
+			final EntityPlayerMP player = ctx.getServerHandler().playerEntity;
+
+			IThreadListener threadListener = (WorldServer)player.world;
+			threadListener.addScheduledTask(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					ModUncrafting.instance.getNetwork().sendTo(new ConfigSyncMessage(), player);
+				}
+			});
+
+			return null;
+		}
+	}
+
+}
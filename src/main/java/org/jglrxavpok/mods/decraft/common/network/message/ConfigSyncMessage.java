@@ -1,9 +1,17 @@
 package org.jglrxavpok.mods.decraft.common.network.message;
 
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
 import org.jglrxavpok.mods.decraft.ModUncrafting;
+import org.jglrxavpok.mods.decraft.client.config.ServerConfigCache;
 import org.jglrxavpok.mods.decraft.common.config.ModConfiguration;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.DecoderException;
 import net.minecraft.client.Minecraft;
 import net.minecraft.util.IThreadListener;
 import net.minecraft.world.WorldServer;
@@ -14,9 +22,17 @@ import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
 import net.minecraftforge.fml.relauncher.Side;
 
 
+/**
+ * Sends the configuration values which affect uncrafting between the server and the client. The values are deflate-compressed,
+ * and the server only sends them to clients which don't already have them, as identified by the fingerprint in a ConfigHashMessage.
+ *
+ */
 public class ConfigSyncMessage implements IMessage
 {
 
+	/** the largest payload which is accepted, either compressed or inflated */
+	public static final int MAX_PAYLOAD_SIZE = 1 << 20;
+
 	private int standardLevel = ModConfiguration.standardLevel;
 	private int maxUsedLevel = ModConfiguration.maxUsedLevel;
 	private int enchantmentCost = ModConfiguration.enchantmentCost;
@@ -27,37 +43,181 @@ public class ConfigSyncMessage implements IMessage
 	private boolean useRabbitHide = ModConfiguration.useRabbitHide;
 	private boolean ensureReturn = ModConfiguration.ensureReturn;
 
+	/** the encoded values, before and after compression */
+	private byte[] payload = null;
+	private byte[] compressedPayload = null;
+
 
 	public ConfigSyncMessage()
 	{
 	}
 
+	/**
+	 * Creates a message from a compressed payload which was previously received from a server
+	 */
+	public static ConfigSyncMessage fromCompressedPayload(byte[] compressedPayload)
+	{
+		ConfigSyncMessage message = new ConfigSyncMessage();
+		message.compressedPayload = compressedPayload;
+		message.readPayload(inflate(compressedPayload));
+		return message;
+	}
+
 	@Override
 	public void fromBytes(ByteBuf buf)
 	{
+		int length = ByteBufUtils.readVarInt(buf, 5);
+		if (length > MAX_PAYLOAD_SIZE) throw new DecoderException("Config payload is too large (" + length + " bytes)");
+
+		this.compressedPayload = new byte[length];
+		buf.readBytes(this.compressedPayload);
+		readPayload(inflate(this.compressedPayload));
+	}
+
+	@Override
+	public void toBytes(ByteBuf buf)
+	{
+		byte[] compressedPayload = getCompressedPayload();
+		ByteBufUtils.writeVarInt(buf, compressedPayload.length, 5);
+		buf.writeBytes(compressedPayload);
+	}
+
+
+	private byte[] getPayload()
+	{
+		if (this.payload == null)
+		{
+			ByteBuf buf = Unpooled.buffer();
+			ByteBufUtils.writeVarShort(buf, standardLevel);
+			ByteBufUtils.writeVarShort(buf, maxUsedLevel);
+			ByteBufUtils.writeVarShort(buf, enchantmentCost);
+			ByteBufUtils.writeVarShort(buf, uncraftMethod);
+			ByteBufUtils.writeVarInt(buf, excludedItems.length, 5);
+			for ( String excludedItem : excludedItems )
+			{
+				ByteBufUtils.writeUTF8String(buf, excludedItem);
+			}
+			buf.writeBoolean(useNuggets);
+			buf.writeBoolean(registerNuggets);
+			buf.writeBoolean(useRabbitHide);
+			buf.writeBoolean(ensureReturn);
+
+			this.payload = new byte[buf.readableBytes()];
+			buf.readBytes(this.payload);
+		}
+		return this.payload;
+	}
+
+	private void readPayload(byte[] payload)
+	{
+		this.payload = payload;
+
+		ByteBuf buf = Unpooled.wrappedBuffer(payload);
 		standardLevel = ByteBufUtils.readVarShort(buf);
 		maxUsedLevel = ByteBufUtils.readVarShort(buf);
 		enchantmentCost = ByteBufUtils.readVarShort(buf);
 		uncraftMethod = ByteBufUtils.readVarShort(buf);
-		excludedItems = ByteBufUtils.readUTF8String(buf).split("\\|");
-		useNuggets = (ByteBufUtils.readVarShort(buf) == 1);
-		registerNuggets = (ByteBufUtils.readVarShort(buf) == 1);
-		useRabbitHide = (ByteBufUtils.readVarShort(buf) == 1);
-		ensureReturn = (ByteBufUtils.readVarShort(buf) == 1);
+		excludedItems = new String[ByteBufUtils.readVarInt(buf, 5)];
+		for ( int i = 0 ; i < excludedItems.length ; i++ )
+		{
+			excludedItems[i] = ByteBufUtils.readUTF8String(buf);
+		}
+		useNuggets = buf.readBoolean();
+		registerNuggets = buf.readBoolean();
+		useRabbitHide = buf.readBoolean();
+		ensureReturn = buf.readBoolean();
 	}
 
-	@Override
-	public void toBytes(ByteBuf buf)
+	public byte[] getCompressedPayload()
+	{
+		if (this.compressedPayload == null) this.compressedPayload = deflate(getPayload());
+		return this.compressedPayload;
+	}
+
+	/**
+	 * Computes a fingerprint of the configuration values, which is the same on the server and the client if they have the same values
+	 */
+	public long getFingerprint()
 	{
-		ByteBufUtils.writeVarShort(buf, standardLevel);
-		ByteBufUtils.writeVarShort(buf, maxUsedLevel);
-		ByteBufUtils.writeVarShort(buf, enchantmentCost);
-		ByteBufUtils.writeVarShort(buf, uncraftMethod);
-		ByteBufUtils.writeUTF8String(buf, String.join("|", excludedItems));
-		ByteBufUtils.writeVarShort(buf, (useNuggets ? 1 : 0));
-		ByteBufUtils.writeVarShort(buf, (registerNuggets ? 1 : 0));
-		ByteBufUtils.writeVarShort(buf, (useRabbitHide ? 1 : 0));
-		ByteBufUtils.writeVarShort(buf, (ensureReturn ? 1 : 0));
+		// 64-bit FNV-1a
+		long fingerprint = 0xcbf29ce484222325L;
+		for ( byte b : getPayload() )
+		{
+			fingerprint ^= (b & 0xff);
+			fingerprint *= 0x100000001b3L;
+		}
+		return fingerprint;
+	}
+
+
+	private static byte[] deflate(byte[] data)
+	{
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		try
+		{
+			deflater.setInput(data);
+			deflater.finish();
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + 16);
+			byte[] buffer = new byte[1024];
+			while (!deflater.finished())
+			{
+				output.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return output.toByteArray();
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(byte[] data)
+	{
+		Inflater inflater = new Inflater();
+		try
+		{
+			inflater.setInput(data);
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+			byte[] buffer = new byte[1024];
+			while (!inflater.finished())
+			{
+				int length = inflater.inflate(buffer);
+				if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) throw new DecoderException("Config payload is truncated");
+
+				output.write(buffer, 0, length);
+				if (output.size() > MAX_PAYLOAD_SIZE) throw new DecoderException("Config payload is too large");
+			}
+			return output.toByteArray();
+		}
+		catch (DataFormatException ex)
+		{
+			throw new DecoderException("Config payload is corrupt", ex);
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+
+
+	/**
+	 * Replaces the local configuration values with the values in the message
+	 */
+	public void apply()
+	{
+		ModConfiguration.maxUsedLevel = this.maxUsedLevel;
+		ModConfiguration.standardLevel = this.standardLevel;
+		ModConfiguration.enchantmentCost = this.enchantmentCost;
+		ModConfiguration.uncraftMethod = this.uncraftMethod;
+		ModConfiguration.excludedItems = this.excludedItems;
+		ModConfiguration.useNuggets = this.useNuggets;
+		ModConfiguration.registerNuggets = this.registerNuggets;
+		ModConfiguration.useRabbitHide = this.useRabbitHide;
+		ModConfiguration.ensureReturn = this.ensureReturn;
+
+		ModConfiguration.onConfigChanged();
 	}
 
 
@@ -80,7 +240,7 @@ public class ConfigSyncMessage implements IMessage
 		}
 
 		@Override
-		public IMessage onMessage(final ConfigSyncMessage message, MessageContext ctx)
+		public IMessage onMessage(final ConfigSyncMessage message, final MessageContext ctx)
 		{
 			IThreadListener threadListener = getThreadListener(ctx);
 			threadListener.addScheduledTask(new Runnable()
@@ -88,15 +248,10 @@ public class ConfigSyncMessage implements IMessage
 				@Override
 				public void run()
 				{
-					ModConfiguration.maxUsedLevel = message.maxUsedLevel;
-					ModConfiguration.standardLevel = message.standardLevel;
-					ModConfiguration.enchantmentCost = message.enchantmentCost;
-					ModConfiguration.uncraftMethod = message.uncraftMethod;
-					ModConfiguration.excludedItems = message.excludedItems;
-					ModConfiguration.useNuggets = message.useNuggets;
-					ModConfiguration.registerNuggets = message.registerNuggets;
-					ModConfiguration.useRabbitHide = message.useRabbitHide;
-					ModConfiguration.ensureReturn = message.ensureReturn;
+					message.apply();
+
+					// keep a copy of the server's values, so that they don't need to be sent again next time
+					if (ctx.side == Side.CLIENT) ServerConfigCache.save(message);
 				}
 			});
 
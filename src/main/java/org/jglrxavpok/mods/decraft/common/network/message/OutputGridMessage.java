@@ -0,0 +1,91 @@
+package org.jglrxavpok.mods.decraft.common.network.message;
+
+import org.jglrxavpok.mods.decraft.common.network.ItemStackCodec;
+import org.jglrxavpok.mods.decraft.inventory.ContainerUncraftingTable;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.client.Minecraft;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.item.ItemStack;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessageHandler;
+import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
+
+
+/**
+ * Sends the whole uncrafting output grid to the client in a single message, in place of the vanilla slot updates for the nine output slots.
+ *
+ */
+public class OutputGridMessage implements IMessage
+{
+
+	private int windowId;
+	private ItemStack[] recipeItems;
+	private ItemStack[] containerItems;
+
+
+	public OutputGridMessage()
+	{
+	}
+
+	public OutputGridMessage(int windowId, ItemStack[] recipeItems, ItemStack[] containerItems)
+	{
+		this.windowId = windowId;
+		this.recipeItems = recipeItems;
+		this.containerItems = containerItems;
+	}
+
+	@Override
+	public void fromBytes(ByteBuf buf)
+	{
+		this.windowId = buf.readUnsignedByte();
+
+		int slotCount = buf.readUnsignedByte();
+		this.recipeItems = new ItemStack[slotCount];
+		this.containerItems = new ItemStack[slotCount];
+		for ( int i = 0 ; i < slotCount ; i++ )
+		{
+			this.recipeItems[i] = ItemStackCodec.readItemStack(buf);
+			this.containerItems[i] = ItemStackCodec.readItemStack(buf);
+		}
+	}
+
+	@Override
+	public void toBytes(ByteBuf buf)
+	{
+		buf.writeByte(this.windowId);
+
+		buf.writeByte(this.recipeItems.length);
+		for ( int i = 0 ; i < this.recipeItems.length ; i++ )
+		{
+			ItemStackCodec.writeItemStack(buf, this.recipeItems[i]);
+			ItemStackCodec.writeItemStack(buf, this.containerItems[i]);
+		}
+	}
+
+
+	public static final class MessageHandler implements IMessageHandler<OutputGridMessage, IMessage>
+	{
+
+		@Override
+		public IMessage onMessage(final OutputGridMessage message, MessageContext ctx)
+		{
+			Minecraft.getMinecraft().addScheduledTask(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					EntityPlayer player = Minecraft.getMinecraft().player;
+					if (player != null && player.openContainer instanceof ContainerUncraftingTable && player.openContainer.windowId == message.windowId)
+					{
+						ContainerUncraftingTable uncraftingContainer = (ContainerUncraftingTable)player.openContainer;
+						uncraftingContainer.applyOutputGrid(message.recipeItems, message.containerItems);
+					}
+				}
+			});
+
+			return null;
+		}
+	}
+
+}
@@ -13,6 +13,11 @@ import net.minecraftforge.fml.common.network.simpleimpl.IMessageHandler;
 import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
 
 
+/**
+ * Sends the recipe chosen by the player to the server. The client previews the alternative recipes itself,
+ * so this is only sent once the player has settled on a recipe.
+ *
+ */
 public class RecipeNavigationMessage implements IMessage
 {
 
@@ -49,21 +54,25 @@ public class RecipeNavigationMessage implements IMessage
 		{
 			final EntityPlayerMP player = ctx.getServerHandler().playerEntity;
 
-			IThreadListener threadListener = (WorldServer)player.world;
-			threadListener.addScheduledTask(new Runnable()
+			Container container = player.openContainer;
+			if (container instanceof ContainerUncraftingTable)
 			{
-				@Override
-				public void run()
+				final ContainerUncraftingTable uncraftingContainer = (ContainerUncraftingTable)container;
+
+				// only schedule a task if there isn't one waiting already, so that superseded requests are collapsed into the latest one
+				if (uncraftingContainer.requestRecipe(message.recipeIndex))
 				{
-					Container container = player.openContainer;
-					if (container instanceof ContainerUncraftingTable)
+					IThreadListener threadListener = (WorldServer)player.world;
+					threadListener.addScheduledTask(new Runnable()
 					{
-						ContainerUncraftingTable uncraftingContainer = (ContainerUncraftingTable)container;
-						uncraftingContainer.uncraftingResult.selectedCraftingGrid = message.recipeIndex;
-						uncraftingContainer.switchRecipe();
-					}
+						@Override
+						public void run()
+						{
+							if (player.openContainer == uncraftingContainer) uncraftingContainer.applyRequestedRecipe();
+						}
+					});
 				}
-			});
+			}
 
 			return null;
 		}
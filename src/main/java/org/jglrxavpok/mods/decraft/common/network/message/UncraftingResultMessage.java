@@ -0,0 +1,152 @@
+package org.jglrxavpok.mods.decraft.common.network.message;
+
+import org.jglrxavpok.mods.decraft.common.network.ItemStackCodec;
+import org.jglrxavpok.mods.decraft.inventory.ContainerUncraftingTable;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.client.Minecraft;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.item.ItemStack;
+import net.minecraftforge.fml.common.network.ByteBufUtils;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessageHandler;
+import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
+
+
+/**
+ * Sends the uncrafting result computed by the server to the client, so that the client doesn't have to look up the recipes itself.
+ * The crafting grids of all the alternative recipes are only sent when the server has a new result, so that the client can preview them
+ * without asking the server; later messages for the same result only send the result state, and the selected grid if it has been modified.
+ *
+ */
+public class UncraftingResultMessage implements IMessage
+{
+
+	private static final int FLAG_CRAFTING_GRIDS = 1;
+	private static final int FLAG_MODIFIED_GRID = 2;
+	private static final int MAX_VARINT_BYTES = 5;
+
+	private int windowId;
+	private int resultType;
+	private int experienceCost;
+	private int selectedCraftingGrid;
+	/** the crafting grids of all the alternative recipes, or null if they haven't changed since the last message */
+	private ItemStack[][] craftingGrids;
+	private int[] minStackSizes;
+	/** the modified copy of the selected crafting grid, or null if it hasn't been modified */
+	private ItemStack[] modifiedCraftingGrid;
+
+
+	public UncraftingResultMessage()
+	{
+	}
+
+	public UncraftingResultMessage(int windowId, int resultType, int experienceCost, int selectedCraftingGrid, ItemStack[][] craftingGrids, int[] minStackSizes, ItemStack[] modifiedCraftingGrid)
+	{
+		this.windowId = windowId;
+		this.resultType = resultType;
+		this.experienceCost = experienceCost;
+		this.selectedCraftingGrid = selectedCraftingGrid;
+		this.craftingGrids = craftingGrids;
+		this.minStackSizes = minStackSizes;
+		this.modifiedCraftingGrid = modifiedCraftingGrid;
+	}
+
+	@Override
+	public void fromBytes(ByteBuf buf)
+	{
+		this.windowId = buf.readUnsignedByte();
+		int flags = buf.readUnsignedByte();
+		this.resultType = buf.readUnsignedByte();
+		this.experienceCost = ByteBufUtils.readVarShort(buf);
+		this.selectedCraftingGrid = ByteBufUtils.readVarShort(buf);
+
+		if ((flags & FLAG_CRAFTING_GRIDS) != 0)
+		{
+			int recipeCount = ByteBufUtils.readVarShort(buf);
+			this.craftingGrids = new ItemStack[recipeCount][];
+			this.minStackSizes = new int[recipeCount];
+			for ( int i = 0 ; i < recipeCount ; i++ )
+			{
+				this.minStackSizes[i] = ByteBufUtils.readVarInt(buf, MAX_VARINT_BYTES);
+				this.craftingGrids[i] = readCraftingGrid(buf);
+			}
+		}
+
+		if ((flags & FLAG_MODIFIED_GRID) != 0)
+		{
+			this.modifiedCraftingGrid = readCraftingGrid(buf);
+		}
+	}
+
+	@Override
+	public void toBytes(ByteBuf buf)
+	{
+		buf.writeByte(this.windowId);
+		buf.writeByte((this.craftingGrids != null ? FLAG_CRAFTING_GRIDS : 0) | (this.modifiedCraftingGrid != null ? FLAG_MODIFIED_GRID : 0));
+		buf.writeByte(this.resultType);
+		ByteBufUtils.writeVarShort(buf, this.experienceCost);
+		ByteBufUtils.writeVarShort(buf, this.selectedCraftingGrid);
+
+		if (this.craftingGrids != null)
+		{
+			ByteBufUtils.writeVarShort(buf, this.craftingGrids.length);
+			for ( int i = 0 ; i < this.craftingGrids.length ; i++ )
+			{
+				ByteBufUtils.writeVarInt(buf, this.minStackSizes[i], MAX_VARINT_BYTES);
+				writeCraftingGrid(buf, this.craftingGrids[i]);
+			}
+		}
+
+		if (this.modifiedCraftingGrid != null)
+		{
+			writeCraftingGrid(buf, this.modifiedCraftingGrid);
+		}
+	}
+
+
+	private static ItemStack[] readCraftingGrid(ByteBuf buf)
+	{
+		ItemStack[] craftingGrid = new ItemStack[buf.readUnsignedByte()];
+		for ( int i = 0 ; i < craftingGrid.length ; i++ )
+		{
+			craftingGrid[i] = ItemStackCodec.readItemStack(buf);
+		}
+		return craftingGrid;
+	}
+
+	private static void writeCraftingGrid(ByteBuf buf, ItemStack[] craftingGrid)
+	{
+		buf.writeByte(craftingGrid.length);
+		for ( int i = 0 ; i < craftingGrid.length ; i++ )
+		{
+			ItemStackCodec.writeItemStack(buf, craftingGrid[i]);
+		}
+	}
+
+
+	public static final class MessageHandler implements IMessageHandler<UncraftingResultMessage, IMessage>
+	{
+
+		@Override
+		public IMessage onMessage(final UncraftingResultMessage message, MessageContext ctx)
+		{
+			Minecraft.getMinecraft().addScheduledTask(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					EntityPlayer player = Minecraft.getMinecraft().player;
+					if (player != null && player.openContainer instanceof ContainerUncraftingTable && player.openContainer.windowId == message.windowId)
+					{
+						ContainerUncraftingTable uncraftingContainer = (ContainerUncraftingTable)player.openContainer;
+						uncraftingContainer.applyUncraftingResult(message.resultType, message.experienceCost, message.selectedCraftingGrid, message.craftingGrids, message.minStackSizes, message.modifiedCraftingGrid);
+					}
+				}
+			});
+
+			return null;
+		}
+	}
+
+}
@@ -1,17 +1,32 @@
 package org.jglrxavpok.mods.decraft.inventory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.jglrxavpok.mods.decraft.ModUncrafting;
+import org.jglrxavpok.mods.decraft.common.network.message.OutputGridMessage;
+import org.jglrxavpok.mods.decraft.common.network.message.UncraftingResultMessage;
 import org.jglrxavpok.mods.decraft.event.ItemUncraftedEvent;
 import org.jglrxavpok.mods.decraft.inventory.InventoryUncraftResult.StackType;
+import org.jglrxavpok.mods.decraft.item.uncrafting.AsyncUncraftingResolver;
+import org.jglrxavpok.mods.decraft.item.uncrafting.UncraftingGrid;
 import org.jglrxavpok.mods.decraft.item.uncrafting.UncraftingManager;
 import org.jglrxavpok.mods.decraft.item.uncrafting.UncraftingResult;
 import org.jglrxavpok.mods.decraft.item.uncrafting.UncraftingResult.ResultType;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
 import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.entity.player.InventoryPlayer;
 import net.minecraft.init.Items;
+import net.minecraft.inventory.ClickType;
 import net.minecraft.inventory.Container;
+import net.minecraft.inventory.IContainerListener;
 import net.minecraft.inventory.IInventory;
 import net.minecraft.inventory.InventoryBasic;
 import net.minecraft.inventory.InventoryCrafting;
@@ -19,6 +34,7 @@ import net.minecraft.inventory.Slot;
 import net.minecraft.item.ItemStack;
 import net.minecraft.util.NonNullList;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
 import net.minecraftforge.common.MinecraftForge;
 
 
@@ -33,6 +49,34 @@ public class ContainerUncraftingTable extends Container
 
 	public UncraftingResult uncraftingResult = new UncraftingResult();
 
+	/** incremented each time the input item changes, so that the results of asynchronous lookups for a previous item can be recognised */
+	private int resolutionTicket = 0;
+
+	/** bit mask of the uncrafting table's own slots (the book slot, the input slot and the output grid) */
+	private static final long TABLE_SLOTS = (1L << 11) - 1;
+	/** bit mask of the output grid slots, which are sent to the client together in an OutputGridMessage */
+	private static final long OUTPUT_SLOTS = TABLE_SLOTS & ~3L;
+
+	/** bit mask of the table's slots which may have changed since they were last sent to the client */
+	private long dirtySlots = TABLE_SLOTS;
+
+	/** the output grid which was last sent to the client */
+	private final ItemStack[] sentRecipeItems = new ItemStack[9];
+	private final ItemStack[] sentContainerItems = new ItemStack[9];
+	private boolean outputGridSent = false;
+
+	/** the uncrafting result state which was last sent to the client */
+	private UncraftingResult sentResult = null;
+	private ResultType sentResultType = null;
+	private int sentExperienceCost = 0;
+	private int sentSelectedCraftingGrid = 0;
+	private UncraftingGrid sentCraftingGrid = null;
+
+	/** the recipe most recently chosen by the client which hasn't been applied yet, or -1 (set on the network thread) */
+	private final AtomicInteger requestedCraftingGrid = new AtomicInteger(-1);
+	/** the recipe which the client is previewing until the server has switched to it, or -1 (client only) */
+	private int previewedCraftingGrid = -1;
+
 
 	public ContainerUncraftingTable(InventoryPlayer playerInventoryIn, World worldIn)
 	{
@@ -73,11 +117,22 @@ public class ContainerUncraftingTable extends Container
 	}
 
 
+	/**
+	 * Marks the uncrafting table's own slots as needing to be compared with the client's copy
+	 */
+	private void markTableSlotsDirty()
+	{
+		this.dirtySlots |= TABLE_SLOTS;
+	}
+
+
 	private void populateOutputInventory()
 	{
+		markTableSlotsDirty();
+
 		// get the minimum stack size and the crafting grid from the uncrafting result
 		int minStackSize = uncraftingResult.getMinStackSize();
-		NonNullList<ItemStack> craftingGrid = uncraftingResult.getCraftingGrid();
+		UncraftingGrid craftingGrid = uncraftingResult.getCraftingGrid();
 
 		// calculate a multipler to use when adding new items to the uncrafting inventory
 		int multiplier = (uncraftIn.getStackInSlot(0).getCount() / minStackSize);
@@ -92,7 +147,7 @@ public class ContainerUncraftingTable extends Container
 				if (
 					uncraftingResult.resultType == ResultType.VALID
 					||
-					(uncraftingResult.resultType == ResultType.NEED_CONTAINER_ITEMS && craftingGrid.get(index).getItem().hasContainerItem(craftingGrid.get(index))) // the hasContainerItem parameter is usually ignored, but some mods (Immersive Engineering) need it to be there
+					(uncraftingResult.resultType == ResultType.NEED_CONTAINER_ITEMS && (craftingGrid.getContainerItemMask() & (1 << index)) != 0)
 				)
 				{
 
@@ -106,7 +161,7 @@ public class ContainerUncraftingTable extends Container
 					// if the crafting recipe item has NBT data, copy that onto the new itemstack
 					if (craftingGrid.get(index).hasTagCompound())
 					{
-						newStack.setTagCompound(craftingGrid.get(index).getTagCompound());
+						newStack.setTagCompound(craftingGrid.get(index).getTagCompound().copy());
 					}
 
 					// add the new itemstack to the inventory
@@ -121,6 +176,8 @@ public class ContainerUncraftingTable extends Container
 
 	private void doUncraft()
 	{
+		markTableSlotsDirty();
+
 		// if we're not in creative mode
 		if (!playerInventory.player.capabilities.isCreativeMode)
 		{
@@ -179,6 +236,8 @@ public class ContainerUncraftingTable extends Container
 
 	private void returnContainerItemsToPlayer()
 	{
+		markTableSlotsDirty();
+
 		// for each slot in the output grid
 		for (int i = 0; i < uncraftOut.getSizeInventory(); i++ )
 		{
@@ -200,6 +259,8 @@ public class ContainerUncraftingTable extends Container
 
 	private void returnUncraftingOutputItemsToPlayer()
 	{
+		markTableSlotsDirty();
+
 		// for each slot in the output grid
 		for (int i = 0; i < uncraftOut.getSizeInventory(); i++ )
 		{
@@ -221,6 +282,14 @@ public class ContainerUncraftingTable extends Container
 
 	public void switchRecipe()
 	{
+		// the client receives the result for the newly selected recipe from the server
+		if (this.worldObj.isRemote) return;
+
+		markTableSlotsDirty();
+
+		// the selected recipe is applied when the pending lookup completes
+		if (uncraftingResult.resultType == ResultType.PENDING) return;
+
 		// remove the recipe items from the grid, if present
 		uncraftOut.clear(StackType.RECIPE);
 
@@ -242,10 +311,62 @@ public class ContainerUncraftingTable extends Container
 	}
 
 
+	/**
+	 * Called on the network thread when the client has chosen a recipe. Returns true if a task needs to be scheduled to apply the recipe,
+	 * or false if an earlier request is still waiting to be applied, in which case that request is replaced by this one.
+	 */
+	public boolean requestRecipe(int index)
+	{
+		return (this.requestedCraftingGrid.getAndSet(index) < 0);
+	}
+
+	/**
+	 * Called on the server thread to switch to the recipe most recently chosen by the client
+	 */
+	public void applyRequestedRecipe()
+	{
+		int index = this.requestedCraftingGrid.getAndSet(-1);
+		if (index < 0) return;
+
+		// the client has cleared its output grid and is waiting for the recipe to be confirmed, so both are sent again
+		markTableSlotsDirty();
+		this.outputGridSent = false;
+		this.sentSelectedCraftingGrid = -1;
+
+		if (index < uncraftingResult.getRecipeCount() || uncraftingResult.resultType == ResultType.PENDING)
+		{
+			uncraftingResult.selectedCraftingGrid = index;
+			switchRecipe();
+		}
+	}
+
+	/**
+	 * Called on the client when the player selects a different recipe. The recipe is shown from the crafting grids which were sent
+	 * by the server, and the output grid is left empty until the server has switched to the recipe and sent the new contents.
+	 */
+	public void previewRecipe(int index)
+	{
+		this.uncraftingResult.selectedCraftingGrid = index;
+		this.previewedCraftingGrid = index;
+		uncraftOut.clear();
+	}
+
+	public boolean isPreviewingRecipe()
+	{
+		return (this.previewedCraftingGrid >= 0);
+	}
+
+
 	public void onInputItemChanged()
 	{
+		// the client receives the uncrafting result from the server, rather than looking up the recipes itself
+		if (this.worldObj.isRemote) return;
+
 		ItemStack inputStack = uncraftIn.getStackInSlot(0);
 
+		// any lookup which is still in progress is for the previous input item, so its result will be discarded
+		final int ticket = ++resolutionTicket;
+
 		if (inputStack.isEmpty())
 		{
 			// TODO: move logic out of onCraftMatrixChanged ?
@@ -256,20 +377,90 @@ public class ContainerUncraftingTable extends Container
 			{
 				returnUncraftingOutputItemsToPlayer();
 			}
-			this.uncraftingResult = UncraftingManager.getUncraftingResult(playerInventory.player, inputStack);
-			this.uncraftingResult.experienceCost = UncraftingManager.recalculateExperienceCost(inputStack, calculInput.getStackInSlot(0));
+
+			// if async mode is enabled, find the recipes on a worker thread and mark the result as pending until they've been found
+			if (AsyncUncraftingResolver.isEnabled())
+			{
+				this.uncraftingResult = new UncraftingResult();
+				this.uncraftingResult.resultType = ResultType.PENDING;
+
+				final ItemStack resolvedStack = inputStack.copy();
+				Futures.addCallback(AsyncUncraftingResolver.resolve(resolvedStack), new FutureCallback<UncraftingResult>()
+				{
+					@Override
+					public void onSuccess(final UncraftingResult result)
+					{
+						((WorldServer)worldObj).addScheduledTask(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								applyResolvedResult(ticket, result);
+							}
+						});
+					}
+
+					@Override
+					public void onFailure(Throwable t)
+					{
+						ModUncrafting.instance.getLogger().error("Unable to find the uncrafting recipes for " + resolvedStack, t);
+
+						// fall back to finding the recipes on the server thread
+						((WorldServer)worldObj).addScheduledTask(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								applyResolvedResult(ticket, UncraftingManager.resolveUncraftingResult(resolvedStack));
+							}
+						});
+					}
+				});
+			}
+			else
+			{
+				this.uncraftingResult = UncraftingManager.getUncraftingResult(playerInventory.player, inputStack);
+				this.uncraftingResult.experienceCost = UncraftingManager.recalculateExperienceCost(inputStack, calculInput.getStackInSlot(0));
+			}
 		}
 
 		onCraftMatrixChanged(uncraftIn);
 	}
 
 
+	/**
+	 * Called on the server thread when an asynchronous lookup has completed.
+	 * The result is discarded if the input item has changed since the lookup was started, or the container has been closed.
+	 */
+	private void applyResolvedResult(int ticket, UncraftingResult result)
+	{
+		if (ticket != this.resolutionTicket || this.uncraftingResult.resultType != ResultType.PENDING) return;
+
+		ItemStack inputStack = uncraftIn.getStackInSlot(0);
+		if (inputStack.isEmpty()) return;
+
+		// keep any recipe which the client selected while the lookup was in progress
+		if (this.uncraftingResult.selectedCraftingGrid < result.getRecipeCount()) result.selectedCraftingGrid = this.uncraftingResult.selectedCraftingGrid;
+
+		this.uncraftingResult = result;
+		this.uncraftingResult.experienceCost = UncraftingManager.recalculateExperienceCost(inputStack, calculInput.getStackInSlot(0));
+
+		// determine the result type, and populate the output inventory if appropriate
+		onCraftMatrixChanged(uncraftIn);
+	}
+
+
 	/**
 	 * Callback for when the crafting matrix is changed.
 	 */
 	@Override
 	public void onCraftMatrixChanged(IInventory inventory)
 	{
+		// the client only displays the result and the output grid which are sent by the server
+		if (this.worldObj.isRemote) return;
+
+		// the contents of the output grid depend on the result type, so any change may affect all of the table's slots
+		markTableSlotsDirty();
 
 		if (inventory == calculInput)
 		{
@@ -307,7 +498,13 @@ public class ContainerUncraftingTable extends Container
 			// if the stack is not empty
 			else
 			{
-				if (this.uncraftingResult.resultType != ResultType.UNCRAFTED)
+				// if the recipes are still being found, make sure the output grid doesn't show anything from the previous result
+				if (this.uncraftingResult.resultType == ResultType.PENDING)
+				{
+					uncraftOut.clear(StackType.RECIPE);
+					if (!uncraftOut.isEmpty()) returnContainerItemsToPlayer();
+				}
+				else if (this.uncraftingResult.resultType != ResultType.UNCRAFTED)
 				{
 					// update the uncrafting result type for the updated input stack
 					UncraftingManager.recalculateResultType(uncraftingResult, playerInventory.player, uncraftIn.getStackInSlot(0));
@@ -352,7 +549,7 @@ public class ContainerUncraftingTable extends Container
 				{
 					uncraftingResult = new UncraftingResult();
 				}
-				else
+				else if (this.uncraftingResult.resultType != ResultType.PENDING)
 				{
 					UncraftingManager.recalculateResultType(uncraftingResult, playerInventory.player, uncraftIn.getStackInSlot(0));
 				}
@@ -375,6 +572,9 @@ public class ContainerUncraftingTable extends Container
 
 		if (!this.worldObj.isRemote)
 		{
+			// discard the result of any lookup which is still in progress
+			this.resolutionTicket++;
+
 			ItemStack itemstack;
 
 			// if there's an itemstack in the input slot, drop the stack into the world
@@ -446,6 +646,9 @@ public class ContainerUncraftingTable extends Container
 			// if the slot belongs to the uncrafting result grid
 			else if (slot.inventory.equals(uncraftOut))
 			{
+				// the uncrafting is only done on the server, which sends the updated slots back to the client
+				if (this.worldObj.isRemote) return ItemStack.EMPTY;
+
 				if (this.uncraftingResult.resultType == ResultType.VALID)
 				{
 					doUncraft();
@@ -546,10 +749,188 @@ public class ContainerUncraftingTable extends Container
 	@Override
 	public void putStackInSlot(int slotId, ItemStack stack)
 	{
-		// TODO: i assume there's a reason that Container does this, but this container seems to work without it!
-		// this.getSlot(slotId).putStack(stack);
+		// the output grid slots are only updated by an OutputGridMessage
+		if ((OUTPUT_SLOTS & (1L << slotId)) != 0) return;
+
+		this.getSlot(slotId).putStack(stack);
+	}
+
+	@Override
+	public ItemStack slotClick(int slotId, int dragType, ClickType clickType, EntityPlayer player)
+	{
+		// a click can move items into or out of any of the table's slots
+		markTableSlotsDirty();
+
+		// the client will have guessed the outcome of a click in the output grid, so the whole grid is sent again to correct it
+		if (slotId >= 0 && (OUTPUT_SLOTS & (1L << slotId)) != 0) this.outputGridSent = false;
+
+		return super.slotClick(slotId, dragType, clickType, player);
+	}
+
+
+	/**
+	 * Looks for changes in the slots and sends them to the client. Unlike the vanilla implementation, the table's own slots are only
+	 * compared when they've been marked as dirty, so an idle table costs little more per tick than the player's inventory. The player's
+	 * inventory slots are compared every tick, as they can be changed from outside the container.
+	 */
+	@Override
+	public void detectAndSendChanges()
+	{
+		long dirtySlots = this.dirtySlots;
+		this.dirtySlots = 0;
+
+		// the uncrafting result and the output grid slots aren't sent individually
+		if ((dirtySlots & OUTPUT_SLOTS) != 0)
+		{
+			sendUncraftingResult();
+			sendOutputGrid();
+		}
+
+		// *** copied from Container ***
+		for (int i = 0; i < this.inventorySlots.size(); ++i)
+		{
+			if (i < 11 && (dirtySlots & (1L << i) & ~OUTPUT_SLOTS) == 0) continue;
+
+			ItemStack itemstack = ((Slot)this.inventorySlots.get(i)).getStack();
+			ItemStack itemstack1 = (ItemStack)this.inventoryItemStacks.get(i);
+
+			if (!ItemStack.areItemStacksEqual(itemstack1, itemstack))
+			{
+				itemstack1 = itemstack.isEmpty() ? ItemStack.EMPTY : itemstack.copy();
+				this.inventoryItemStacks.set(i, itemstack1);
+
+				for (int j = 0; j < this.listeners.size(); ++j)
+				{
+					((IContainerListener)this.listeners.get(j)).sendSlotContents(this, i, itemstack1);
+				}
+			}
+		}
+		// *** copied from Container ***
+	}
+
+
+	/**
+	 * Sends the uncrafting result to the client, if the result, the selected recipe or the result state has changed since it was last sent.
+	 * The crafting grids of all the alternative recipes are only sent when the result itself has changed.
+	 */
+	private void sendUncraftingResult()
+	{
+		UncraftingGrid craftingGrid = this.uncraftingResult.getCraftingGrid();
+		boolean newResult = (this.uncraftingResult != this.sentResult);
+		if (
+			!newResult && this.uncraftingResult.resultType == this.sentResultType
+			&& this.uncraftingResult.experienceCost == this.sentExperienceCost
+			&& this.uncraftingResult.selectedCraftingGrid == this.sentSelectedCraftingGrid && craftingGrid == this.sentCraftingGrid
+		) return;
+
+		this.sentResult = this.uncraftingResult;
+		this.sentResultType = this.uncraftingResult.resultType;
+		this.sentExperienceCost = this.uncraftingResult.experienceCost;
+		this.sentSelectedCraftingGrid = this.uncraftingResult.selectedCraftingGrid;
+		this.sentCraftingGrid = craftingGrid;
+
+		ItemStack[][] craftingGrids = null; int[] minStackSizes = null;
+		if (newResult)
+		{
+			craftingGrids = new ItemStack[this.uncraftingResult.getRecipeCount()][];
+			minStackSizes = new int[craftingGrids.length];
+			for ( int i = 0 ; i < craftingGrids.length ; i++ )
+			{
+				Map.Entry<UncraftingGrid,Integer> pair = this.uncraftingResult.craftingGrids.get(i);
+				craftingGrids[i] = pair.getKey().toArray(new ItemStack[pair.getKey().size()]);
+				minStackSizes[i] = pair.getValue();
+			}
+		}
+		ItemStack[] modifiedCraftingGrid = (this.uncraftingResult.isCraftingGridModified() ? craftingGrid.toArray(new ItemStack[craftingGrid.size()]) : null);
+
+		UncraftingResultMessage message = new UncraftingResultMessage(this.windowId, this.sentResultType.ordinal(), this.sentExperienceCost,
+			this.sentSelectedCraftingGrid, craftingGrids, minStackSizes, modifiedCraftingGrid
+		);
+		for ( IContainerListener listener : this.listeners )
+		{
+			if (listener instanceof EntityPlayerMP) ModUncrafting.instance.getNetwork().sendTo(message, (EntityPlayerMP)listener);
+		}
+	}
+
+	/**
+	 * Sends the output grid to the client in a single message, if it has changed since it was last sent
+	 */
+	private void sendOutputGrid()
+	{
+		boolean changed = !this.outputGridSent;
+		for ( int i = 0 ; i < uncraftOut.getSizeInventory() && !changed ; i++ )
+		{
+			changed = !ItemStack.areItemStacksEqual(uncraftOut.getStackInSlot(i, StackType.RECIPE), this.sentRecipeItems[i])
+				|| !ItemStack.areItemStacksEqual(uncraftOut.getStackInSlot(i, StackType.CONTAINER), this.sentContainerItems[i]);
+		}
+		if (!changed) return;
+
+		for ( int i = 0 ; i < uncraftOut.getSizeInventory() ; i++ )
+		{
+			this.sentRecipeItems[i] = uncraftOut.getStackInSlot(i, StackType.RECIPE).copy();
+			this.sentContainerItems[i] = uncraftOut.getStackInSlot(i, StackType.CONTAINER).copy();
+		}
+		this.outputGridSent = true;
+
+		OutputGridMessage message = new OutputGridMessage(this.windowId, this.sentRecipeItems.clone(), this.sentContainerItems.clone());
+		for ( IContainerListener listener : this.listeners )
+		{
+			if (listener instanceof EntityPlayerMP) ModUncrafting.instance.getNetwork().sendTo(message, (EntityPlayerMP)listener);
+		}
+	}
+
+	/**
+	 * Called on the client when an UncraftingResultMessage is received, to replace or update the client's copy of the uncrafting result
+	 */
+	public void applyUncraftingResult(int resultType, int experienceCost, int selectedCraftingGrid, ItemStack[][] craftingGrids, int[] minStackSizes, ItemStack[] modifiedCraftingGrid)
+	{
+		if (craftingGrids != null)
+		{
+			List<UncraftingGrid> grids = new ArrayList<UncraftingGrid>(craftingGrids.length);
+			for ( ItemStack[] craftingGrid : craftingGrids )
+			{
+				grids.add(UncraftingGrid.of(Arrays.asList(craftingGrid)));
+			}
+
+			// a new result replaces any recipe which was being previewed
+			this.uncraftingResult = UncraftingResult.fromServer(ResultType.values()[resultType], experienceCost, selectedCraftingGrid, grids, minStackSizes);
+			this.previewedCraftingGrid = -1;
+		}
+		else
+		{
+			this.uncraftingResult.resultType = ResultType.values()[resultType];
+			this.uncraftingResult.experienceCost = experienceCost;
+
+			// keep showing the recipe being previewed until the server has switched to it
+			if (this.previewedCraftingGrid == selectedCraftingGrid) this.previewedCraftingGrid = -1;
+			if (this.previewedCraftingGrid < 0 && selectedCraftingGrid < this.uncraftingResult.getRecipeCount())
+			{
+				this.uncraftingResult.selectedCraftingGrid = selectedCraftingGrid;
+			}
+		}
+
+		if (modifiedCraftingGrid != null && selectedCraftingGrid < this.uncraftingResult.getRecipeCount())
+		{
+			this.uncraftingResult.setCraftingGrid(selectedCraftingGrid, UncraftingGrid.of(Arrays.asList(modifiedCraftingGrid)));
+		}
+	}
+
+	/**
+	 * Called on the client when an OutputGridMessage is received, to replace the contents of the output grid.
+	 * The contents are ignored while a recipe is being previewed, as the server sends the grid again once it has switched recipes.
+	 */
+	public void applyOutputGrid(ItemStack[] recipeItems, ItemStack[] containerItems)
+	{
+		if (isPreviewingRecipe()) return;
+
+		for ( int i = 0 ; i < recipeItems.length ; i++ )
+		{
+			uncraftOut.setInventorySlotContents(i, recipeItems[i], StackType.RECIPE);
+			uncraftOut.setInventorySlotContents(i, containerItems[i], StackType.CONTAINER);
+		}
 	}
 
+
 	@Override
 	public boolean canInteractWith(EntityPlayer player)
 	{
@@ -28,6 +28,13 @@ public class InventoryUncraftResult implements IInventory
 	private ItemStackPair[] stackResult = new ItemStackPair[9];
 	private ContainerUncraftingTable eventHandler;
 
+	/** bit mask of the slots with a recipe item which requires a container item, computed when the recipe item is placed */
+	private int containerRequiredMask = 0;
+	/** bit mask of the slots which hold a container item */
+	private int containerPresentMask = 0;
+	/** the container item for the recipe item in each slot which requires one, which may be null for some mods (e.g. IC2, IE) */
+	private Item[] containerItems = new Item[9];
+
 
 	public InventoryUncraftResult(ContainerUncraftingTable p_i1807_1_)
 	{
@@ -61,7 +68,8 @@ public class InventoryUncraftResult implements IInventory
 		}
 		else if (this.eventHandler.uncraftingResult.resultType == ResultType.NEED_CONTAINER_ITEMS)
 		{
-			if (this.stackResult[index].recipeItem != ItemStack.EMPTY && stackResult[index].recipeItem.getItem().hasContainerItem(stackResult[index].recipeItem) && this.stackResult[index].containerItem != ItemStack.EMPTY) // the hasContainerItem parameter is usually ignored, but some mods (Immersive Engineering) need it to be there
+			// if the recipe item requires a container item, and the container item is present
+			if ((this.containerRequiredMask & this.containerPresentMask & (1 << index)) != 0)
 			{
 				return this.stackResult[index].recipeItem;
 			}
@@ -87,6 +95,39 @@ public class InventoryUncraftResult implements IInventory
 	}
 
 
+	/**
+	 * Places a recipe item in a slot, and determines whether it requires a container item
+	 */
+	private void setRecipeItem(int index, ItemStack stack)
+	{
+		this.stackResult[index].recipeItem = stack;
+
+		// the recipe items come from the selected crafting grid, which has already worked out which of its items require a container item
+		int bit = (1 << index);
+		if (stack != ItemStack.EMPTY && (this.eventHandler.uncraftingResult.getCraftingGrid().getContainerItemMask() & bit) != 0)
+		{
+			this.containerRequiredMask |= bit;
+			this.containerItems[index] = stack.getItem().getContainerItem();
+		}
+		else
+		{
+			this.containerRequiredMask &= ~bit;
+			this.containerItems[index] = null;
+		}
+	}
+
+	/**
+	 * Places a container item in a slot
+	 */
+	private void setContainerItem(int index, ItemStack stack)
+	{
+		this.stackResult[index].containerItem = stack;
+
+		if (stack != ItemStack.EMPTY) this.containerPresentMask |= (1 << index);
+		else this.containerPresentMask &= ~(1 << index);
+	}
+
+
 	/**
 	 * Removes up to a specified number of items from an inventory slot and returns them in a new stack.
 	 */
@@ -102,8 +143,8 @@ public class InventoryUncraftResult implements IInventory
 				// remove the recipe item from the slot, and return it
 				ItemStack itemstack = this.stackResult[index].recipeItem;
 
-				this.stackResult[index].recipeItem = ItemStack.EMPTY;
-				this.stackResult[index].containerItem = ItemStack.EMPTY;
+				setRecipeItem(index, ItemStack.EMPTY);
+				setContainerItem(index, ItemStack.EMPTY);
 
 				this.eventHandler.onCraftMatrixChanged(this);
 				return itemstack;
@@ -118,7 +159,7 @@ public class InventoryUncraftResult implements IInventory
 				// remove the container item from the slot, and return it
 				ItemStack itemstack = this.stackResult[index].containerItem;
 
-				this.stackResult[index].containerItem = ItemStack.EMPTY;
+				setContainerItem(index, ItemStack.EMPTY);
 
 				this.eventHandler.onCraftMatrixChanged(this);
 				return itemstack;
@@ -143,7 +184,7 @@ public class InventoryUncraftResult implements IInventory
 			{
 				// remove the recipe item from the slot, and return it
 				ItemStack itemstack = this.stackResult[index].recipeItem;
-				this.stackResult[index].recipeItem = ItemStack.EMPTY;
+				setRecipeItem(index, ItemStack.EMPTY);
 				return itemstack;
 			}
 		}
@@ -155,7 +196,7 @@ public class InventoryUncraftResult implements IInventory
 			{
 				// remove the container item from the slot, and return it
 				ItemStack itemstack = this.stackResult[index].containerItem;
-				this.stackResult[index].containerItem = ItemStack.EMPTY;
+				setContainerItem(index, ItemStack.EMPTY);
 				return itemstack;
 			}
 		}
@@ -170,28 +211,28 @@ public class InventoryUncraftResult implements IInventory
 	public void setInventorySlotContents(int index, ItemStack stack)
 	{
 		// if the slot isn't empty, and the item in the slot requires a container item
-		if (stack != ItemStack.EMPTY && this.stackResult[index].recipeItem != ItemStack.EMPTY && stackResult[index].recipeItem.getItem().hasContainerItem(stackResult[index].recipeItem)) // the hasContainerItem parameter is usually ignored, but some mods (Immersive Engineering) need it to be there
+		if (stack != ItemStack.EMPTY && (this.containerRequiredMask & (1 << index)) != 0)
 		{
 			// get the container item for the recipe item
 			Item recipeItem = stackResult[index].recipeItem.getItem();
-			Item containerItem = recipeItem.getContainerItem(); if (containerItem == null) containerItem = recipeItem;  // some mods (e.g. IC2) use a null container item for some recipes
+			Item containerItem = containerItems[index]; if (containerItem == null) containerItem = recipeItem;  // some mods (e.g. IC2) use a null container item for some recipes
 
 			// if the stack being passed in is the correct container item for the recipe item
 			if (stack.getItem() == containerItem)
 			{
 				// store the container item
-				this.stackResult[index].containerItem = stack;
+				setContainerItem(index, stack);
 
 				// if the recipe item and the container items are equal
 				if (recipeItem == containerItem)
 				{
 					// copy the container stack into the recipe stack
 					ItemStack newStack = stack.copy();
-					this.stackResult[index].recipeItem = newStack;
+					setRecipeItem(index, newStack);
 
 					// update the uncrafting recipe itself with the provided container item rather than the default
 					// (this is for mods like tinker's construct where chisels vary based on nbt data)
-					this.eventHandler.uncraftingResult.getCraftingGrid().set(index, newStack); // TODO: this probably shouldn't be happening in the inventory
+					this.eventHandler.uncraftingResult.setCraftingGridStack(index, newStack); // TODO: this probably shouldn't be happening in the inventory
 				}
 
 				this.eventHandler.onCraftMatrixChanged(this);
@@ -200,11 +241,11 @@ public class InventoryUncraftResult implements IInventory
 		// if the slot is empty, or the slot item doesn't require a container item, set the recipe item
 		else
 		{
-			this.stackResult[index].recipeItem = stack;
+			setRecipeItem(index, stack);
 
 			if (this.eventHandler.uncraftingResult.resultType == ResultType.INACTIVE && stack == ItemStack.EMPTY)
 			{
-				this.stackResult[index].containerItem = stack;
+				setContainerItem(index, stack);
 			}
 
 			this.eventHandler.onCraftMatrixChanged(this);
@@ -215,8 +256,8 @@ public class InventoryUncraftResult implements IInventory
 	{
 		switch (stackType)
 		{
-			case RECIPE: this.stackResult[index].recipeItem = stack; break;
-			case CONTAINER: this.stackResult[index].containerItem = stack; break;
+			case RECIPE: setRecipeItem(index, stack); break;
+			case CONTAINER: setContainerItem(index, stack); break;
 		}
 	}
 
@@ -300,11 +341,10 @@ public class InventoryUncraftResult implements IInventory
 	public boolean isItemValidForSlot(int index, ItemStack stack)
 	{
 		// if the recipe item has a container item
-		if (stackResult[index].recipeItem != ItemStack.EMPTY && stackResult[index].recipeItem.getItem().hasContainerItem(stackResult[index].recipeItem)) // the hasContainerItem parameter is usually ignored, but some mods (Immersive Engineering) need it to be there
+		if ((this.containerRequiredMask & (1 << index)) != 0)
 		{
 			// get the container item for the recipe item
-			Item recipeItem = stackResult[index].recipeItem.getItem();
-			Item containerItem = recipeItem.getContainerItem(); // if (containerItem == null) containerItem = recipeItem;  // some mods (e.g. IC2, IE) use a null container item for some recipes
+			Item containerItem = containerItems[index]; // if (containerItem == null) containerItem = recipeItem;  // some mods (e.g. IC2, IE) use a null container item for some recipes
 
 			if (containerItem == null) // some mods (e.g. IC2, IE) use a null container item for some recipes
 			{
@@ -367,7 +407,10 @@ public class InventoryUncraftResult implements IInventory
 		{
 			this.stackResult[i].recipeItem = ItemStack.EMPTY;
 			this.stackResult[i].containerItem = ItemStack.EMPTY;
+			this.containerItems[i] = null;
 		}
+		this.containerRequiredMask = 0;
+		this.containerPresentMask = 0;
 	}
 
 	public void clear(StackType stackType)
@@ -378,7 +421,9 @@ public class InventoryUncraftResult implements IInventory
 				for (int i = 0; i < this.stackResult.length; ++i)
 				{
 					this.stackResult[i].recipeItem = ItemStack.EMPTY;
+					this.containerItems[i] = null;
 				}
+				this.containerRequiredMask = 0;
 				break;
 
 			case CONTAINER:
@@ -386,34 +431,34 @@ public class InventoryUncraftResult implements IInventory
 				{
 					this.stackResult[i].containerItem = ItemStack.EMPTY;
 				}
+				this.containerPresentMask = 0;
 				break;
 		}
 	}
 
 
+	/**
+	 * Returns true if the recipe item in a slot requires a container item
+	 */
+	public boolean isContainerItemRequired(int index)
+	{
+		return (this.containerRequiredMask & (1 << index)) != 0;
+	}
+
+	/**
+	 * Returns true if any of the recipe items which require a container item don't have one
+	 */
 	public boolean missingContainerItems()
 	{
-		for (int index = 0; index < this.stackResult.length; ++index)
-		{
-			if (stackResult[index].recipeItem != ItemStack.EMPTY && stackResult[index].recipeItem.getItem().hasContainerItem(stackResult[index].recipeItem) && this.stackResult[index].containerItem == ItemStack.EMPTY) // the hasContainerItem parameter is usually ignored, but some mods (Immersive Engineering) need it to be there
-			{
-				return true;
-			}
-		}
-		return false;
+		return (this.containerRequiredMask & ~this.containerPresentMask) != 0;
 	}
 
+	/**
+	 * Returns the number of recipe items which require a container item and don't have one
+	 */
 	public int missingContainerItemCount()
 	{
-		int count = 0;
-		for (int index = 0; index < this.stackResult.length; ++index)
-		{
-			if (stackResult[index].recipeItem != ItemStack.EMPTY && stackResult[index].recipeItem.getItem().hasContainerItem(stackResult[index].recipeItem) && this.stackResult[index].containerItem == ItemStack.EMPTY) // the hasContainerItem parameter is usually ignored, but some mods (Immersive Engineering) need it to be there
-			{
-				count++;
-			}
-		}
-		return count;
+		return Integer.bitCount(this.containerRequiredMask & ~this.containerPresentMask);
 	}
 
 }
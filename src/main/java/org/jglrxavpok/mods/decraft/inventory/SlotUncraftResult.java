@@ -32,8 +32,9 @@ public class SlotUncraftResult extends Slot
     public int getSlotStackLimit()
     {
 		// the stack limit is the number of required container items for the recipe item (usually one), or zero
-		ItemStack stack = ((InventoryUncraftResult)this.inventory).getStackInSlot(this.getSlotIndex(), StackType.RECIPE);
-		return (stack != null && stack.getItem().hasContainerItem(stack) ? stack.getCount() : 0);
+		InventoryUncraftResult inventory = (InventoryUncraftResult)this.inventory;
+		if (!inventory.isContainerItemRequired(this.getSlotIndex())) return 0;
+		return inventory.getStackInSlot(this.getSlotIndex(), StackType.RECIPE).getCount();
     }
 
 }
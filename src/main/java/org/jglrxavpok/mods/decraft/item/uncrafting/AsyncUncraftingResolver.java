@@ -0,0 +1,92 @@
+package org.jglrxavpok.mods.decraft.item.uncrafting;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.jglrxavpok.mods.decraft.ModUncrafting;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.minecraft.item.ItemStack;
+
+
+/**
+ * Bounded worker pool used to find the crafting grids for the item in an uncrafting table off the server thread.
+ * Only the item dependent part of the uncrafting result is resolved by the workers, so the result type (which depends on the player)
+ * must be calculated on the server thread once the result has been received.
+ * If the queue of pending lookups is full, the lookup is performed on the calling thread instead.
+ *
+ */
+public class AsyncUncraftingResolver
+{
+
+	private static final int QUEUE_CAPACITY = 64;
+
+	private static volatile ListeningExecutorService executor = null;
+	private static volatile int threadCount = 0;
+
+
+	/**
+	 * Sets the number of threads in the worker pool, or disables asynchronous lookups if the number is zero.
+	 * The pool itself isn't created until the first lookup is submitted, so it's never created on a client.
+	 * Lookups which have already been submitted to a previous pool are allowed to complete.
+	 */
+	public static synchronized void configure(int threadCount)
+	{
+		if (AsyncUncraftingResolver.threadCount == threadCount) return;
+		AsyncUncraftingResolver.threadCount = threadCount;
+
+		if (executor != null) executor.shutdown();
+		executor = null;
+	}
+
+	/**
+	 * Returns true if lookups should be submitted to the worker pool rather than being performed on the server thread
+	 */
+	public static boolean isEnabled()
+	{
+		return threadCount > 0;
+	}
+
+	/**
+	 * Finds the crafting grids and experience cost for uncrafting an item on one of the worker threads. Must be called on the server thread,
+	 * which performs the parts of the lookup which aren't thread safe before the rest is submitted. If asynchronous lookups have been
+	 * disabled since isEnabled was checked, the lookup is performed on the calling thread instead.
+	 * @param itemStack The stack of items being uncrafted, which is copied so that later changes to the stack don't affect the lookup
+	 * @return A future which completes with an uncrafting result which doesn't yet have a result type
+	 */
+	public static synchronized ListenableFuture<UncraftingResult> resolve(ItemStack itemStack)
+	{
+		final ItemStack inputStack = itemStack.copy();
+		UncraftingManager.prepareLookup(inputStack);
+
+		if (threadCount == 0) return Futures.immediateFuture(UncraftingManager.lookupUncraftingResult(inputStack));
+
+		if (executor == null)
+		{
+			ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threadCount, threadCount, 30, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+				new ThreadFactoryBuilder().setNameFormat(ModUncrafting.MODID + "-resolver-%d").setDaemon(true).build(),
+				new ThreadPoolExecutor.CallerRunsPolicy()
+			);
+			threadPool.allowCoreThreadTimeOut(true);
+			executor = MoreExecutors.listeningDecorator(threadPool);
+		}
+
+		return executor.submit(new Callable<UncraftingResult>()
+		{
+			@Override
+			public UncraftingResult call()
+			{
+				return UncraftingManager.lookupUncraftingResult(inputStack);
+			}
+		});
+	}
+
+}
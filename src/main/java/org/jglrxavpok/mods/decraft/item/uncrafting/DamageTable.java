@@ -0,0 +1,335 @@
+package org.jglrxavpok.mods.decraft.item.uncrafting;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jglrxavpok.mods.decraft.common.config.ModConfiguration;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.NonNullList;
+import net.minecraftforge.oredict.OreDictionary;
+
+
+/**
+ * Precomputed partial material returns for uncrafting a damaged item using a particular crafting grid.
+ * The number of items and nuggets returned for each material only changes at the damage values where one of the rounded counts changes,
+ * so the damage values are divided into buckets which produce the same crafting grid, and the crafting grid for each bucket is computed once.
+ * The bucket indexes increase with the damage value.
+ *
+ */
+public class DamageTable
+{
+
+	/** the largest maximum damage for which a table is built, as the bucket for each damage value is stored in a char array */
+	private static final int MAX_TABLE_DAMAGE = Character.MAX_VALUE - 1;
+
+	/** the ore dictionary lists are live views, so they can be resolved once and reused */
+	private static final List<ItemStack> STICK_ORES = OreDictionary.getOres("stickWood");
+	private static final List<ItemStack> LEATHER_ORES = OreDictionary.getOres("leather");
+
+	private static final ThreadLocal<MaterialReturns> MATERIAL_RETURNS = new ThreadLocal<MaterialReturns>()
+	{
+		@Override
+		protected MaterialReturns initialValue()
+		{
+			return new MaterialReturns();
+		}
+	};
+
+	private static volatile int currentVersion = 0;
+
+
+	private final int version;
+	private final int maxDamage;
+	private final char[] buckets;
+	private final UncraftingGrid[] craftingGrids;
+
+
+	private DamageTable(NonNullList<ItemStack> recipeGrid, int maxDamage)
+	{
+		this.version = currentVersion;
+		this.maxDamage = maxDamage;
+		this.buckets = new char[maxDamage + 1];
+
+		MaterialReturns materialReturns = new MaterialReturns();
+		materialReturns.analyse(recipeGrid);
+
+		// start a new bucket each time the returned counts change
+		List<UncraftingGrid> craftingGrids = new ArrayList<UncraftingGrid>();
+		for ( int damage = 1 ; damage <= maxDamage ; damage++ )
+		{
+			if (materialReturns.calculate(damage, maxDamage)) craftingGrids.add(UncraftingGrid.of(materialReturns.apply(recipeGrid)));
+			buckets[damage] = (char)(craftingGrids.size() - 1);
+		}
+		this.craftingGrids = craftingGrids.toArray(new UncraftingGrid[craftingGrids.size()]);
+	}
+
+	/**
+	 * Builds the damage table for a crafting grid and the maximum damage of the item being uncrafted.
+	 * @return The damage table, or null if the maximum damage is out of the range which can be tabulated
+	 */
+	public static DamageTable build(NonNullList<ItemStack> recipeGrid, int maxDamage)
+	{
+		if (maxDamage <= 0 || maxDamage > MAX_TABLE_DAMAGE) return null;
+		return new DamageTable(recipeGrid, maxDamage);
+	}
+
+	/**
+	 * Returns true if the table was built for the given maximum damage, and hasn't been invalidated since
+	 */
+	public boolean isCurrent(int maxDamage)
+	{
+		return this.version == currentVersion && this.maxDamage == maxDamage;
+	}
+
+	/**
+	 * Invalidates all of the existing tables, so that they're rebuilt the next time they're needed.
+	 * Must be called whenever the configuration or the nugget table changes.
+	 */
+	public static synchronized void invalidateAll()
+	{
+		currentVersion++;
+	}
+
+
+	public int getMaxDamage()
+	{
+		return maxDamage;
+	}
+
+	/**
+	 * Returns the bucket containing a damage value between 1 and the maximum damage
+	 */
+	public int getBucket(int damage)
+	{
+		return buckets[damage];
+	}
+
+	/**
+	 * Returns the shared crafting grid for a damage value between 1 and the maximum damage
+	 */
+	public UncraftingGrid getCraftingGrid(int damage)
+	{
+		return craftingGrids[buckets[damage]];
+	}
+
+
+	/**
+	 * Modifies the crafting recipe for a damageable item to return some of the ingredients depending on the damage of the input item,
+	 * without using a table.
+	 * @param recipeGrid The unmodified crafting recipe of the damageable item
+	 * @param damage The damage of the item
+	 * @param maxDamage The maximum damage of the item
+	 * @return A modified copy of the crafting recipe with some ingredients removed
+	 */
+	public static NonNullList<ItemStack> removeItemsByDamage(NonNullList<ItemStack> recipeGrid, int damage, int maxDamage)
+	{
+		MaterialReturns materialReturns = MATERIAL_RETURNS.get();
+		materialReturns.analyse(recipeGrid);
+		materialReturns.calculate(damage, maxDamage);
+		return materialReturns.apply(recipeGrid);
+	}
+
+
+
+	/**
+	 * Calculates the number of items and nuggets returned for each material in a crafting grid.
+	 * The working arrays are reused between calculations, and grown as needed for larger crafting grids.
+	 *
+	 */
+	private static class MaterialReturns
+	{
+		private static final int TYPE_ITEM = 0;
+		private static final int TYPE_STICK = 1;
+		private static final int TYPE_NUGGET = 2;
+
+		private int gridSize = 0;
+		private boolean calculated = false;
+
+		/** the first slot containing the same material as each slot, or -1 for empty slots */
+		private int[] materialSlots = new int[9];
+		/** the following arrays are indexed by the first slot of each material */
+		private int[] amounts = new int[9];
+		private int[] types = new int[9];
+		private int[] ratios = new int[9];
+		private ItemStack[] nuggetStacks = new ItemStack[9];
+		private int[] itemCounts = new int[9];
+		private int[] nuggetCounts = new int[9];
+
+
+		/**
+		 * Determines the unique materials used in the crafting grid, the total number of each item, and their nuggets
+		 */
+		private void analyse(NonNullList<ItemStack> recipeGrid)
+		{
+			gridSize = recipeGrid.size();
+			calculated = false;
+			if (materialSlots.length < gridSize)
+			{
+				materialSlots = new int[gridSize];
+				amounts = new int[gridSize];
+				types = new int[gridSize];
+				ratios = new int[gridSize];
+				nuggetStacks = new ItemStack[gridSize];
+				itemCounts = new int[gridSize];
+				nuggetCounts = new int[gridSize];
+			}
+
+			// each slot is assigned to the first slot containing the same material, and the total number of items is kept against that slot
+			for ( int i = 0 ; i < gridSize ; i++ )
+			{
+				ItemStack recipeStack = recipeGrid.get(i);
+				materialSlots[i] = -1;
+				amounts[i] = 0;
+
+				if (!recipeStack.isEmpty())
+				{
+					int materialSlot = 0;
+					while (materialSlot < i && !(materialSlots[materialSlot] == materialSlot && recipeGrid.get(materialSlot).isItemEqual(recipeStack))) materialSlot++;
+
+					materialSlots[i] = materialSlot;
+					amounts[materialSlot] += recipeStack.getCount();
+				}
+			}
+
+			// for each unique material in the crafting recipe...
+			for ( int materialSlot = 0 ; materialSlot < gridSize ; materialSlot++ )
+			{
+				if (materialSlots[materialSlot] != materialSlot) continue;
+
+				ItemStack materialStack = recipeGrid.get(materialSlot);
+
+				// check the nugget table to see if this material has a matching nugget
+				NuggetTable.Nugget nugget = NuggetTable.getNugget(materialStack);
+
+				// if the stack contains sticks
+				if (isOre(materialStack, STICK_ORES))
+				{
+					types[materialSlot] = TYPE_STICK;
+				}
+				// if the stack contains leather and we should use rabbit hide
+				else if (ModConfiguration.useRabbitHide && isOre(materialStack, LEATHER_ORES))
+				{
+					types[materialSlot] = TYPE_NUGGET;
+					nugget = NuggetTable.getRabbitHide();
+				}
+				// if we found a nugget item in the nugget table
+				else if (nugget != null)
+				{
+					types[materialSlot] = TYPE_NUGGET;
+				}
+				// if there's no nugget for this item in the nugget table
+				else
+				{
+					types[materialSlot] = TYPE_ITEM;
+				}
+
+				nuggetStacks[materialSlot] = (nugget != null ? nugget.getNuggetStack() : ItemStack.EMPTY);
+				ratios[materialSlot] = (nugget != null ? nugget.getRatio() : 0);
+			}
+		}
+
+		/**
+		 * Calculates the number of items and nuggets to return for each material
+		 * @return True if any of the counts differ from the previous calculation
+		 */
+		private boolean calculate(int damage, int maxDamage)
+		{
+			// calculate the percentage durability remaining on the item
+			double durabilityPercentage = 100 - (100 * ((double)damage / (double)maxDamage));
+
+			boolean changed = !calculated;
+			for ( int materialSlot = 0 ; materialSlot < gridSize ; materialSlot++ )
+			{
+				if (materialSlots[materialSlot] != materialSlot) continue;
+
+				int amount = amounts[materialSlot];
+				int ratio = ratios[materialSlot];
+				int itemCount = 0;
+				int nuggetCount = 0;
+
+				if (types[materialSlot] == TYPE_STICK)
+				{
+					// calculate the total number of full items which most closely represent the percentage durability remaining on the item
+					// rounding up to the nearest item
+					itemCount = (int)Math.ceil(amount * (durabilityPercentage / 100));
+				}
+				else if (types[materialSlot] == TYPE_NUGGET)
+				{
+					// calculate the number of full items and nuggets which most closely represent the percentage durability remaining on the item
+					// rounding down to the nearest nugget
+					itemCount = (int)Math.floor(amount * (durabilityPercentage / 100));
+					nuggetCount = ((int)Math.floor((amount * ratio) * (durabilityPercentage / 100))) - (itemCount * ratio);
+				}
+				else
+				{
+					// calculate the total number of full items which most closely represent the percentage durability remaining on the item
+					// rounding down to the nearest item
+					itemCount = (int)Math.floor(amount * (durabilityPercentage / 100));
+				}
+
+				// ensure that at least one nugget is returned regardless of durability
+				if (ModConfiguration.ensureReturn && itemCount == 0 && nuggetCount == 0) nuggetCount = 1;
+
+				if (itemCounts[materialSlot] != itemCount || nuggetCounts[materialSlot] != nuggetCount) changed = true;
+				itemCounts[materialSlot] = itemCount;
+				nuggetCounts[materialSlot] = nuggetCount;
+			}
+
+			calculated = true;
+			return changed;
+		}
+
+		/**
+		 * Creates a copy of the crafting grid with the calculated number of items removed, and nuggets added
+		 */
+		private NonNullList<ItemStack> apply(NonNullList<ItemStack> recipeGrid)
+		{
+			// take a copy of the crafting grid, as it may be a shared template
+			NonNullList<ItemStack> craftingGrid = UncraftingGrid.copyOf(recipeGrid);
+
+			for ( int materialSlot = 0 ; materialSlot < gridSize ; materialSlot++ )
+			{
+				if (materialSlots[materialSlot] != materialSlot) continue;
+
+				// flip the item count to become items to remove instead of items to leave
+				int itemCount = amounts[materialSlot] - itemCounts[materialSlot];
+				int nuggetCount = nuggetCounts[materialSlot];
+				ItemStack nuggetStack = nuggetStacks[materialSlot];
+
+				// remove the items from the crafting grid until we've removed the appropriate number.
+				for ( int i = materialSlot ; i < gridSize ; i++ )
+				{
+					if (materialSlots[i] == materialSlot)
+					{
+						if (itemCount > 0)
+						{
+							craftingGrid.set(i, ItemStack.EMPTY);
+							itemCount--;
+						}
+						if (itemCount == 0 && nuggetCount > 0)
+						{
+							craftingGrid.set(i, new ItemStack(nuggetStack.getItem(), nuggetCount, nuggetStack.getItemDamage()));
+							nuggetCount = 0;
+						}
+					}
+				}
+			}
+
+			return craftingGrid;
+		}
+
+		/**
+		 * Checks whether a stack matches one of the stacks registered under an ore dictionary name, without the allocation of OreDictionary.getOreIDs
+		 */
+		private static boolean isOre(ItemStack itemStack, List<ItemStack> ores)
+		{
+			for ( int i = 0 ; i < ores.size() ; i++ )
+			{
+				if (OreDictionary.itemMatches(ores.get(i), itemStack, false)) return true;
+			}
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,243 @@
+package org.jglrxavpok.mods.decraft.item.uncrafting;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.jglrxavpok.mods.decraft.ModUncrafting;
+import org.jglrxavpok.mods.decraft.item.uncrafting.RecipeIndex.IndexedRecipe;
+
+import net.minecraft.init.Items;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.NonNullList;
+import net.minecraftforge.oredict.OreDictionary;
+
+
+/**
+ * Table of the nuggets which can be returned in place of a gem or an ingot when uncrafting a damaged item, along with the number
+ * of nuggets which make up one of the gem or ingot. The ratios are taken from the registered nugget-to-ingot crafting recipes.
+ * The table is built after the recipes have been indexed, and is rebuilt whenever the ore dictionary or the recipe index changes.
+ *
+ */
+public class NuggetTable
+{
+
+	private static final String[] ORE_TYPES = { "gem", "ingot" };
+
+	private static final int DEFAULT_NUGGET_RATIO = 9;
+	private static final int DEFAULT_RABBIT_HIDE_RATIO = 4;
+
+	private static volatile NuggetTable instance = null;
+
+
+	/** nugget entries for each gem or ingot, keyed by metadata (or the wildcard value for all metadata values) */
+	private final Map<Item, Map<Integer, Nugget>> nuggets = new IdentityHashMap<Item, Map<Integer, Nugget>>();
+	private final Nugget rabbitHide;
+
+
+	private NuggetTable()
+	{
+		RecipeIndex recipeIndex = RecipeIndex.getInstance();
+
+		// ore names are processed in registration order, so where an item has more than one ore name, the first one with a nugget is used
+		for ( String oreName : OreDictionary.getOreNames() )
+		{
+			String nuggetName = getNuggetName(oreName);
+			if (nuggetName == null) continue;
+
+			List<ItemStack> nuggetOres = OreDictionary.getOres(nuggetName, false);
+			if (nuggetOres.isEmpty()) continue;
+
+			Nugget nugget = null;
+			for ( ItemStack oreStack : OreDictionary.getOres(oreName, false) )
+			{
+				Map<Integer, Nugget> itemNuggets = nuggets.get(oreStack.getItem());
+				if (itemNuggets == null)
+				{
+					itemNuggets = new HashMap<Integer, Nugget>();
+					nuggets.put(oreStack.getItem(), itemNuggets);
+				}
+				if (itemNuggets.containsKey(oreStack.getItemDamage())) continue;
+
+				// the ratio is taken from the recipes for the first ore stack, and assumed to be the same for the others
+				if (nugget == null)
+				{
+					int ratio = getRatio(recipeIndex, oreStack, OreDictionary.getOreID(nuggetName), null);
+					nugget = new Nugget(nuggetOres.get(0), (ratio > 0 ? ratio : DEFAULT_NUGGET_RATIO));
+				}
+				itemNuggets.put(oreStack.getItemDamage(), nugget);
+			}
+		}
+
+		int rabbitHideRatio = getRatio(recipeIndex, new ItemStack(Items.LEATHER), -1, Items.RABBIT_HIDE);
+		this.rabbitHide = new Nugget(new ItemStack(Items.RABBIT_HIDE, 1, 0), (rabbitHideRatio > 0 ? rabbitHideRatio : DEFAULT_RABBIT_HIDE_RATIO));
+	}
+
+	/**
+	 * Determines the ore dictionary name of the nuggets for a gem or ingot ore name, e.g. "gemDiamond" -> "nuggetDiamond", "leather" -> "nuggetLeather"
+	 * @return The nugget ore name, or null if the ore name isn't for a gem or an ingot
+	 */
+	private static String getNuggetName(String oreName)
+	{
+		if (oreName.isEmpty()) return null;
+
+		// find the start of the second word of the ore name
+		int materialStart = 1;
+		while (materialStart < oreName.length() && !Character.isUpperCase(oreName.charAt(materialStart))) materialStart++;
+
+		if (materialStart == oreName.length())
+		{
+			// a single word ore name, e.g. "leather"
+			return "nugget" + Character.toUpperCase(oreName.charAt(0)) + oreName.substring(1);
+		}
+
+		// a two word ore name with a gem or ingot prefix, e.g. "gemDiamond"
+		if (ArrayUtils.indexOf(ORE_TYPES, oreName.substring(0, materialStart)) < 0) return null;
+		for ( int i = materialStart + 1 ; i < oreName.length() ; i++ )
+		{
+			if (Character.isUpperCase(oreName.charAt(i))) return null;
+		}
+		return "nugget" + oreName.substring(materialStart);
+	}
+
+	/**
+	 * Finds a recipe which crafts the given stack only from nuggets, and returns the number of nuggets used per crafted item.
+	 * @param oreStack The gem or ingot
+	 * @param nuggetOreId The ore dictionary id of the nugget, or -1 to match the nugget item instead
+	 * @param nuggetItem The nugget item, if the nugget isn't matched by ore dictionary id
+	 * @return The number of nuggets per item, or zero if no such recipe was found
+	 */
+	private static int getRatio(RecipeIndex recipeIndex, ItemStack oreStack, int nuggetOreId, Item nuggetItem)
+	{
+		for ( IndexedRecipe indexedRecipe : recipeIndex.getCandidateRecipes(oreStack) )
+		{
+			ItemStack recipeOutput = indexedRecipe.getRecipeOutput();
+			if (indexedRecipe.getHandler() == null || !OreDictionary.itemMatches(oreStack, recipeOutput, false)) continue;
+
+			NonNullList<ItemStack> craftingGrid;
+			try
+			{
+				craftingGrid = indexedRecipe.getCraftingGrid(oreStack);
+			}
+			catch (RuntimeException ex)
+			{
+				continue;
+			}
+
+			int nuggetCount = 0;
+			for ( ItemStack recipeStack : craftingGrid )
+			{
+				if (recipeStack.isEmpty()) continue;
+
+				boolean isNugget = (nuggetOreId >= 0 ? ArrayUtils.contains(OreDictionary.getOreIDs(recipeStack), nuggetOreId) : recipeStack.getItem() == nuggetItem);
+				if (!isNugget)
+				{
+					nuggetCount = 0;
+					break;
+				}
+				nuggetCount += recipeStack.getCount();
+			}
+
+			if (nuggetCount >= recipeOutput.getCount()) return nuggetCount / recipeOutput.getCount();
+		}
+		return 0;
+	}
+
+
+	private static NuggetTable getInstance()
+	{
+		NuggetTable table = instance;
+		if (table == null)
+		{
+			table = build();
+		}
+		return table;
+	}
+
+	/**
+	 * Builds the nugget table from the current contents of the ore dictionary and recipe index.
+	 */
+	public static NuggetTable build()
+	{
+		NuggetTable table = new NuggetTable();
+		instance = table;
+
+		ModUncrafting.instance.getLogger().debug("Found nuggets for " + table.nuggets.size() + " items");
+		return table;
+	}
+
+	/**
+	 * Builds the table now if it has been discarded, rather than the next time it's needed
+	 */
+	public static void ensureBuilt()
+	{
+		getInstance();
+	}
+
+	/**
+	 * Discards the table, so that it's built again the next time it's needed.
+	 */
+	public static void invalidate()
+	{
+		instance = null;
+
+		// the damage tables were calculated using the nuggets from the table
+		DamageTable.invalidateAll();
+	}
+
+
+	/**
+	 * Returns the nugget which can be returned in place of a gem or ingot, or null if the item doesn't have a nugget
+	 */
+	public static Nugget getNugget(ItemStack oreStack)
+	{
+		Map<Integer, Nugget> itemNuggets = getInstance().nuggets.get(oreStack.getItem());
+		if (itemNuggets == null) return null;
+
+		Nugget nugget = itemNuggets.get(oreStack.getItemDamage());
+		return (nugget != null ? nugget : itemNuggets.get(OreDictionary.WILDCARD_VALUE));
+	}
+
+	/**
+	 * Returns the rabbit hide "nugget" which can be returned in place of leather
+	 */
+	public static Nugget getRabbitHide()
+	{
+		return getInstance().rabbitHide;
+	}
+
+
+
+	/**
+	 * A nugget item, and the number of nuggets which make up one of the item it replaces
+	 *
+	 */
+	public static class Nugget
+	{
+		private final ItemStack nuggetStack;
+		private final int ratio;
+
+		private Nugget(ItemStack nuggetStack, int ratio)
+		{
+			this.nuggetStack = nuggetStack;
+			this.ratio = ratio;
+		}
+
+		/**
+		 * Returns the shared nugget stack, which must not be modified
+		 */
+		public ItemStack getNuggetStack()
+		{
+			return nuggetStack;
+		}
+
+		public int getRatio()
+		{
+			return ratio;
+		}
+	}
+
+}
@@ -0,0 +1,565 @@
+package org.jglrxavpok.mods.decraft.item.uncrafting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.jglrxavpok.mods.decraft.ModUncrafting;
+import org.jglrxavpok.mods.decraft.common.config.ModConfiguration;
+import org.jglrxavpok.mods.decraft.item.uncrafting.RecipeIndexSnapshot.LoadedSnapshot;
+import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.NBTSensitiveRecipeHandlers.INBTSensitiveRecipeHandler;
+import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.RecipeHandlers;
+import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.RecipeHandlers.RecipeHandler;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.crafting.CraftingManager;
+import net.minecraft.item.crafting.IRecipe;
+import net.minecraft.util.NonNullList;
+
+
+/**
+ * Reverse index of the crafting recipes known to the crafting manager, keyed by the item each recipe produces.
+ * Used by the uncrafting manager so that a lookup only has to look at the recipes which could produce the input item.
+ *
+ */
+public class RecipeIndex
+{
+
+	private static final ListeningExecutorService REBUILD_EXECUTOR = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor(
+		new ThreadFactoryBuilder().setNameFormat(ModUncrafting.MODID + "-recipe-index").setDaemon(true).build()
+	));
+
+	static final IndexedRecipe[] NO_RECIPES = new IndexedRecipe[0];
+
+	private static volatile RecipeIndex instance = new RecipeIndex(Collections.<IRecipe>emptyList(), Collections.<IRecipe>emptyList(), new IndexedRecipe[0][], 0, false, 0, 0);
+	private static ListenableFuture<RecipeIndex> pendingRebuild = null;
+	/** true if a name has been registered with the ore dictionary since the index was first built */
+	private static volatile boolean oresRegistered = false;
+
+
+	private final Map<Item, List<IndexedRecipe>> recipesByOutput = new IdentityHashMap<Item, List<IndexedRecipe>>();
+	private final Set<Item> nbtSensitiveOutputs = Collections.newSetFromMap(new IdentityHashMap<Item, Boolean>());
+
+	private final int generation;
+	private final List<IRecipe> sourceList;
+	private final List<IRecipe> recipeList;
+	private final IndexedRecipe[][] analysedRecipes;
+	private final int recipeCount;
+	private final int fingerprint;
+	private final boolean loadedFromSnapshot;
+	private final long analysisTime;
+	private final long buildTime;
+
+
+	/**
+	 * @param sourceList The crafting manager's recipe list, used to detect later changes to the list
+	 * @param recipeList A snapshot of the contents of the recipe list, which is the list actually indexed
+	 * @param analysedRecipes The analysed recipes for each recipe in the recipe list
+	 * @param generation A number identifying this instance of the index
+	 * @param loadedFromSnapshot True if all of the analysed recipes were loaded from a snapshot file
+	 * @param analysisTime The time taken to analyse all of the recipes, in milliseconds, which is the time recorded in the snapshot file if they were loaded from it
+	 * @param buildTime The time taken to analyse or load the recipes, in milliseconds
+	 */
+	private RecipeIndex(List<IRecipe> sourceList, List<IRecipe> recipeList, IndexedRecipe[][] analysedRecipes, int generation, boolean loadedFromSnapshot, long analysisTime, long buildTime)
+	{
+		long startTime = System.currentTimeMillis();
+
+		this.generation = generation;
+		this.sourceList = sourceList;
+		this.recipeList = recipeList;
+		this.analysedRecipes = analysedRecipes;
+		this.recipeCount = recipeList.size();
+		this.fingerprint = getFingerprint(recipeList);
+		this.loadedFromSnapshot = loadedFromSnapshot;
+		this.analysisTime = analysisTime;
+
+		// add the analysed recipes to the index in the same order as the recipe list
+		for ( IndexedRecipe[] indexedRecipes : analysedRecipes )
+		{
+			for ( IndexedRecipe indexedRecipe : indexedRecipes ) addRecipe(indexedRecipe);
+		}
+
+		this.buildTime = buildTime + (System.currentTimeMillis() - startTime);
+	}
+
+	/**
+	 * Creates an index from a snapshot of the recipe list, loading the analysed recipes from the snapshot file if allowed and possible.
+	 */
+	private static RecipeIndex create(List<IRecipe> sourceList, List<IRecipe> recipeList, int generation, boolean useSnapshot)
+	{
+		long startTime = System.currentTimeMillis();
+
+		// load what we can from the snapshot, and analyse the rest (which is all of the recipes if there's no snapshot)
+		LoadedSnapshot snapshot = (useSnapshot && ModConfiguration.useIndexSnapshot ? RecipeIndexSnapshot.load(recipeList) : null);
+		long loadTime = System.currentTimeMillis() - startTime;
+
+		IndexedRecipe[][] analysedRecipes = (snapshot != null ? snapshot.analysedRecipes : new IndexedRecipe[recipeList.size()][]);
+		int analysedCount = analyseRecipes(recipeList, analysedRecipes);
+		long buildTime = System.currentTimeMillis() - startTime;
+
+		if (snapshot != null)
+		{
+			ModUncrafting.instance.getLogger().info("Loaded the recipe index snapshot in " + loadTime + "ms and analysed " + analysedCount + " recipes which didn't match it in " + (buildTime - loadTime) + "ms (analysing every recipe took " + snapshot.analysisTime + "ms when it was saved)");
+		}
+
+		long analysisTime = (snapshot != null ? snapshot.analysisTime : buildTime);
+		return new RecipeIndex(sourceList, recipeList, analysedRecipes, generation, (snapshot != null && analysedCount == 0), analysisTime, buildTime);
+	}
+
+	private void addRecipe(IndexedRecipe indexedRecipe)
+	{
+		Item outputItem = indexedRecipe.getRecipeOutput().getItem();
+
+		List<IndexedRecipe> recipes = recipesByOutput.get(outputItem);
+		if (recipes == null)
+		{
+			recipes = new ArrayList<IndexedRecipe>(1);
+			recipesByOutput.put(outputItem, recipes);
+		}
+		recipes.add(indexedRecipe);
+
+		if (indexedRecipe.getHandler() instanceof INBTSensitiveRecipeHandler) nbtSensitiveOutputs.add(outputItem);
+	}
+
+
+	/**
+	 * Analyses each recipe in the list which doesn't already have an entry in the array of analysed recipes, using a fork/join pool to
+	 * analyse the recipes in parallel where the recipe handler allows it.
+	 * @param analysedRecipes The array which receives the analysed recipes for each recipe in the list
+	 * @return The number of recipes which were analysed
+	 */
+	private static int analyseRecipes(List<IRecipe> recipeList, IndexedRecipe[][] analysedRecipes)
+	{
+		int analysedCount = 0;
+		for ( IndexedRecipe[] indexedRecipes : analysedRecipes )
+		{
+			if (indexedRecipes == null) analysedCount++;
+		}
+
+		int parallelism = (ModConfiguration.recipeAnalysisThreads > 0 ? ModConfiguration.recipeAnalysisThreads : Runtime.getRuntime().availableProcessors());
+		if (parallelism > 1 && analysedCount > AnalyseRecipesTask.BATCH_SIZE)
+		{
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try
+			{
+				pool.invoke(new AnalyseRecipesTask(recipeList, analysedRecipes, 0, recipeList.size()));
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+
+		// analyse the recipes which weren't analysed in parallel (either all of them, or just those with handlers which aren't thread safe)
+		for ( int i = 0 ; i < analysedRecipes.length ; i++ )
+		{
+			if (analysedRecipes[i] == null)
+			{
+				IRecipe recipe = recipeList.get(i);
+				analysedRecipes[i] = analyseRecipe(recipe, RecipeHandlers.HANDLERS.get(recipe.getClass()));
+			}
+		}
+
+		return analysedCount;
+	}
+
+	/**
+	 * Determines the possible outputs, the handler and (if possible) the crafting grid of a recipe.
+	 * @return An array containing one indexed recipe per possible output, which is empty if the recipe can't be used for uncrafting
+	 */
+	private static IndexedRecipe[] analyseRecipe(IRecipe recipe, RecipeHandler handler)
+	{
+		// skip recipe types which are explicitly excluded from uncrafting
+		if (handler == null && RecipeHandlers.HANDLERS.hasEntry(recipe.getClass())) return NO_RECIPES;
+
+		// get the output of the recipe, or the list of possible outputs if the recipe has an nbt dependent output
+		ItemStack[] outputStacks;
+		ItemStack recipeOutput = recipe.getRecipeOutput();
+		if (recipeOutput == null || recipeOutput.isEmpty())
+		{
+			outputStacks = RecipeHandlers.getPossibleRecipeOutputs(recipe.getClass());
+			if (outputStacks == null) return NO_RECIPES;
+		}
+		else outputStacks = new ItemStack[] { recipeOutput };
+
+		// get the crafting grid, and if it doesn't contain any items (e.g. an ore dictionary recipe with no ores registered) skip the recipe
+		UncraftingGrid craftingGrid = IndexedRecipe.getCraftingGridTemplate(recipe, handler);
+		if (craftingGrid != null && craftingGrid.getFilledSlotCount() == 0) return NO_RECIPES;
+
+		IndexedRecipe[] indexedRecipes = new IndexedRecipe[outputStacks.length];
+		for ( int i = 0 ; i < outputStacks.length ; i++ )
+		{
+			indexedRecipes[i] = new IndexedRecipe(recipe, outputStacks[i], handler, craftingGrid);
+		}
+		return indexedRecipes;
+	}
+
+
+	/**
+	 * Fork/join task which analyses a range of the recipe list, splitting the range until it's small enough to analyse directly
+	 *
+	 */
+	private static class AnalyseRecipesTask extends RecursiveAction
+	{
+		private static final int BATCH_SIZE = 256;
+
+		private final List<IRecipe> recipeList;
+		private final IndexedRecipe[][] analysedRecipes;
+		private final int start;
+		private final int end;
+
+		private AnalyseRecipesTask(List<IRecipe> recipeList, IndexedRecipe[][] analysedRecipes, int start, int end)
+		{
+			this.recipeList = recipeList;
+			this.analysedRecipes = analysedRecipes;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (end - start > BATCH_SIZE)
+			{
+				int middle = (start + end) >>> 1;
+				invokeAll(new AnalyseRecipesTask(recipeList, analysedRecipes, start, middle), new AnalyseRecipesTask(recipeList, analysedRecipes, middle, end));
+			}
+			else
+			{
+				for ( int i = start ; i < end ; i++ )
+				{
+					if (analysedRecipes[i] != null) continue;
+
+					IRecipe recipe = recipeList.get(i);
+					RecipeHandler handler = RecipeHandlers.HANDLERS.get(recipe.getClass());
+
+					// leave recipes with handlers which aren't thread safe to be analysed sequentially
+					if (handler == null || handler.isThreadSafe())
+					{
+						analysedRecipes[i] = analyseRecipe(recipe, handler);
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Computes a cheap fingerprint of a recipe list from its size and the identities of a sample of its recipes.
+	 * Recipes being added or removed change the size, and most replacements change one of the sampled recipes.
+	 */
+	private static int getFingerprint(List<IRecipe> recipeList)
+	{
+		int size = recipeList.size();
+		int fingerprint = size;
+		if (size > 0)
+		{
+			fingerprint = 31 * fingerprint + System.identityHashCode(recipeList.get(0));
+			fingerprint = 31 * fingerprint + System.identityHashCode(recipeList.get(size / 2));
+			fingerprint = 31 * fingerprint + System.identityHashCode(recipeList.get(size - 1));
+		}
+		return fingerprint;
+	}
+
+
+	/**
+	 * Builds the index from the current contents of the crafting manager's recipe list on the calling thread.
+	 * If the recipe index snapshot matches the recipe list, the analysed recipes are loaded from it instead.
+	 */
+	public static void build()
+	{
+		List<IRecipe> recipeList = CraftingManager.getInstance().getRecipeList();
+		setInstance(create(recipeList, new ArrayList<IRecipe>(recipeList), instance.generation + 1, true));
+	}
+
+	/**
+	 * Rebuilds the index from the current contents of the crafting manager's recipe list on a background thread.
+	 * The existing index continues to be used for lookups until the new one has been built.
+	 * @param force If false, and a rebuild is already in progress, the in-progress rebuild is returned instead of starting a new one.
+	 * If true, the recipes are always analysed again rather than being loaded from the recipe index snapshot.
+	 * @return A future which completes with the new index
+	 */
+	public static synchronized ListenableFuture<RecipeIndex> scheduleRebuild(final boolean force)
+	{
+		if (!force && pendingRebuild != null && !pendingRebuild.isDone()) return pendingRebuild;
+
+		// take a snapshot of the recipe list on the calling thread, as other mods may modify the list while we're building
+		final List<IRecipe> sourceList = CraftingManager.getInstance().getRecipeList();
+		final List<IRecipe> recipeList = new ArrayList<IRecipe>(sourceList);
+
+		pendingRebuild = REBUILD_EXECUTOR.submit(new Callable<RecipeIndex>()
+		{
+			@Override
+			public RecipeIndex call()
+			{
+				RecipeIndex recipeIndex = create(sourceList, recipeList, instance.generation + 1, !force);
+				setInstance(recipeIndex);
+				return recipeIndex;
+			}
+		});
+		return pendingRebuild;
+	}
+
+	/**
+	 * Called when an ore is registered with the ore dictionary. The templates of ore recipes only take the first ore of each list, so an ore
+	 * added to a list which already had one doesn't affect them, but recipes which were skipped because one of their lists was empty may
+	 * now be usable. These are analysed again by refreshOreRecipes, once the other mods have finished registering their ores.
+	 */
+	public static void onOreRegistered()
+	{
+		if (instance.generation != 0) oresRegistered = true;
+	}
+
+	/**
+	 * Analyses the recipes which couldn't be used for uncrafting again if ores have been registered since the index was built, and replaces
+	 * the index if any of them can now be used. Must be called on the main thread, as the ore lists may not be read while they're being added to.
+	 */
+	public static synchronized void refreshOreRecipes()
+	{
+		if (!oresRegistered) return;
+		oresRegistered = false;
+
+		long startTime = System.currentTimeMillis();
+
+		RecipeIndex recipeIndex = instance;
+		IndexedRecipe[][] analysedRecipes = recipeIndex.analysedRecipes.clone();
+		boolean changed = false;
+		for ( int i = 0 ; i < analysedRecipes.length ; i++ )
+		{
+			// only recipes with a crafting grid template can have been skipped for having an empty grid
+			if (analysedRecipes[i].length > 0) continue;
+			IRecipe recipe = recipeIndex.recipeList.get(i);
+			RecipeHandler handler = RecipeHandlers.HANDLERS.get(recipe.getClass());
+			if (handler == null || !handler.isCraftingGridCacheable()) continue;
+
+			IndexedRecipe[] indexedRecipes = analyseRecipe(recipe, handler);
+			if (indexedRecipes.length > 0)
+			{
+				analysedRecipes[i] = indexedRecipes;
+				changed = true;
+			}
+		}
+
+		if (changed) setInstance(new RecipeIndex(recipeIndex.sourceList, recipeIndex.recipeList, analysedRecipes, recipeIndex.generation + 1, false, recipeIndex.analysisTime, recipeIndex.buildTime + (System.currentTimeMillis() - startTime)));
+	}
+
+	private static void setInstance(RecipeIndex recipeIndex)
+	{
+		instance = recipeIndex;
+
+		// the cached uncrafting results were found using the previous index, and the nugget ratios were taken from its recipes
+		UncraftingResultCache.invalidate();
+		NuggetTable.invalidate();
+
+		ModUncrafting.instance.getLogger().info("Indexed " + recipeIndex.recipeCount + " recipes for " + recipeIndex.recipesByOutput.size() + " items in " + recipeIndex.buildTime + "ms (generation " + recipeIndex.generation + (recipeIndex.loadedFromSnapshot ? ", loaded from snapshot" : "") + ")");
+	}
+
+
+	/**
+	 * Checks whether the crafting manager's recipe list has changed since the current index was built,
+	 * and if it has, starts rebuilding the index in the background.
+	 */
+	public static void checkForChanges()
+	{
+		RecipeIndex recipeIndex = instance;
+		if (recipeIndex.generation == 0) return; // the index hasn't been built yet
+
+		List<IRecipe> recipeList = CraftingManager.getInstance().getRecipeList();
+		if (recipeList != recipeIndex.sourceList || recipeList.size() != recipeIndex.recipeCount || getFingerprint(recipeList) != recipeIndex.fingerprint)
+		{
+			scheduleRebuild(false);
+		}
+	}
+
+
+	public static RecipeIndex getInstance()
+	{
+		return instance;
+	}
+
+	public int getGeneration()
+	{
+		return generation;
+	}
+
+	public int getRecipeCount()
+	{
+		return recipeCount;
+	}
+
+	public int getOutputCount()
+	{
+		return recipesByOutput.size();
+	}
+
+	/**
+	 * Returns true if the analysed recipes were loaded from the recipe index snapshot rather than being analysed
+	 */
+	public boolean isLoadedFromSnapshot()
+	{
+		return loadedFromSnapshot;
+	}
+
+	/**
+	 * Returns the recipes which were indexed, in crafting manager order
+	 */
+	List<IRecipe> getRecipeList()
+	{
+		return recipeList;
+	}
+
+	/**
+	 * Returns the analysed recipes for each recipe in the recipe list
+	 */
+	IndexedRecipe[][] getAnalysedRecipes()
+	{
+		return analysedRecipes;
+	}
+
+	/**
+	 * Returns the time taken to analyse all of the recipes, in milliseconds. If the index was loaded from the snapshot, this is the time
+	 * it took when the snapshot was saved.
+	 */
+	public long getAnalysisTime()
+	{
+		return analysisTime;
+	}
+
+	/**
+	 * Returns the time taken to build this index, in milliseconds
+	 */
+	public long getBuildTime()
+	{
+		return buildTime;
+	}
+
+
+	/**
+	 * Returns the recipes which produce the same item as the given stack, in crafting manager order.
+	 * The output of each candidate still needs to be compared against the stack to account for metadata.
+	 */
+	public List<IndexedRecipe> getCandidateRecipes(ItemStack itemStack)
+	{
+		List<IndexedRecipe> recipes = recipesByOutput.get(itemStack.getItem());
+		return (recipes != null ? recipes : Collections.<IndexedRecipe>emptyList());
+	}
+
+
+	/**
+	 * Returns true if one or more of the recipes producing the given item has a crafting grid which depends on the nbt data of the item.
+	 */
+	public boolean isNbtSensitive(Item item)
+	{
+		return nbtSensitiveOutputs.contains(item);
+	}
+
+
+	/**
+	 * A crafting recipe along with the output stack it was indexed by
+	 *
+	 */
+	public static class IndexedRecipe
+	{
+		private final IRecipe recipe;
+		private final ItemStack recipeOutput;
+		private final RecipeHandler handler;
+		private final UncraftingGrid craftingGrid;
+		private volatile DamageTable damageTable = null;
+
+		IndexedRecipe(IRecipe recipe, ItemStack recipeOutput, RecipeHandler handler, UncraftingGrid craftingGrid)
+		{
+			this.recipe = recipe;
+			this.recipeOutput = recipeOutput;
+			this.handler = handler;
+			this.craftingGrid = craftingGrid;
+		}
+
+		/**
+		 * Computes the normalised crafting grid for a recipe whose handler doesn't depend on the input stack.
+		 * Returns null if the crafting grid has to be obtained from the handler on each lookup.
+		 */
+		private static UncraftingGrid getCraftingGridTemplate(IRecipe recipe, RecipeHandler handler)
+		{
+			if (handler == null || !handler.isCraftingGridCacheable()) return null;
+			try
+			{
+				return UncraftingGrid.of(handler.getCraftingGrid(recipe));
+			}
+			catch (RuntimeException ex)
+			{
+				ModUncrafting.instance.getLogger().error("Unable to read crafting grid for " + recipe.getClass().getCanonicalName() + " with output " + recipe.getRecipeOutput(), ex);
+				return UncraftingGrid.EMPTY;
+			}
+		}
+
+		public IRecipe getRecipe()
+		{
+			return recipe;
+		}
+
+		public ItemStack getRecipeOutput()
+		{
+			return recipeOutput;
+		}
+
+		public RecipeHandler getHandler()
+		{
+			return handler;
+		}
+
+		/**
+		 * Returns the crafting grid of the recipe for an input stack. For recipes with a cacheable handler this is a shared, immutable template.
+		 */
+		public NonNullList<ItemStack> getCraftingGrid(ItemStack inputStack)
+		{
+			return (craftingGrid != null ? craftingGrid : handler.getCraftingGrid(recipe, inputStack));
+		}
+
+		/**
+		 * Returns the shared crafting grid template of the recipe, or null if the recipe doesn't have one.
+		 */
+		UncraftingGrid getCraftingGridTemplate()
+		{
+			return craftingGrid;
+		}
+
+		/**
+		 * Returns the damage table for uncrafting a damaged item with the given maximum damage using this recipe,
+		 * or null if the recipe doesn't have a crafting grid template. The table is built the first time it's needed.
+		 */
+		public DamageTable getDamageTable(int maxDamage)
+		{
+			if (craftingGrid == null) return null;
+
+			DamageTable damageTable = this.damageTable;
+			if (damageTable == null || !damageTable.isCurrent(maxDamage))
+			{
+				damageTable = DamageTable.build(craftingGrid, maxDamage);
+				this.damageTable = damageTable;
+			}
+			return damageTable;
+		}
+
+		/**
+		 * Builds the damage table for the given maximum damage if it isn't current, so that a later call to getDamageTable on another thread only has to read it
+		 */
+		public void prebuildDamageTable(int maxDamage)
+		{
+			getDamageTable(maxDamage);
+		}
+	}
+
+}
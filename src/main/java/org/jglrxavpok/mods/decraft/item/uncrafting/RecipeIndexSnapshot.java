@@ -0,0 +1,480 @@
+package org.jglrxavpok.mods.decraft.item.uncrafting;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jglrxavpok.mods.decraft.ModUncrafting;
+import org.jglrxavpok.mods.decraft.common.config.ModConfiguration;
+import org.jglrxavpok.mods.decraft.item.uncrafting.RecipeIndex.IndexedRecipe;
+import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.RecipeHandlers;
+import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.RecipeHandlers.RecipeHandler;
+import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.external.DeclarativeRecipeHandlers;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.crafting.IRecipe;
+import net.minecraft.item.crafting.ShapedRecipes;
+import net.minecraft.item.crafting.ShapelessRecipes;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.fml.common.Loader;
+import net.minecraftforge.fml.common.ModContainer;
+import net.minecraftforge.oredict.ShapedOreRecipe;
+import net.minecraftforge.oredict.ShapelessOreRecipe;
+
+
+/**
+ * Saves the analysed recipes of the recipe index to a binary file when the server stops, so that the next startup can load them
+ * instead of analysing every recipe again. The file is keyed by a fingerprint of the loaded mods and the number of recipes,
+ * and each entry is checked against the recipe it was saved for when it's loaded. If the fingerprint or the recipe classes don't
+ * match, the snapshot is ignored and the recipes are analysed as normal. Each entry also holds a hash of the recipe's ingredients
+ * (as scripting mods may change the ingredients of a recipe without changing its output), and an entry which no longer matches
+ * its recipe is left for the recipe to be analysed again.
+ *
+ * The file consists of a header (magic number, format version, fingerprint, recipe count and the time it took to analyse the recipes),
+ * a table of the item registry names and recipe class names used by the entries, and then one entry per recipe in crafting manager order
+ * containing the recipe class, the ingredients hash, the crafting grid template and container item mask (if the recipe has one), and the
+ * output stacks the recipe is indexed by.
+ *
+ */
+public class RecipeIndexSnapshot
+{
+
+	private static final int MAGIC = 0x55435449; // "UCTI"
+	private static final int FORMAT_VERSION = 4;
+
+	private static final int FLAG_TEMPLATE = 1;
+
+	private static int savedGeneration = -1;
+
+
+	private static File getSnapshotFile()
+	{
+		return new File(new File(Loader.instance().getConfigDir(), ModUncrafting.MODID), "recipe_index.bin");
+	}
+
+
+	/**
+	 * Computes a fingerprint of the loaded mods and their versions, the number of recipes, and the declared recipe handlers.
+	 */
+	private static long getFingerprint(int recipeCount)
+	{
+		// 64-bit FNV-1a
+		long fingerprint = 0xcbf29ce484222325L;
+		for ( ModContainer mod : Loader.instance().getActiveModList() )
+		{
+			String modVersion = mod.getModId() + "@" + mod.getVersion() + ";";
+			for ( int i = 0 ; i < modVersion.length() ; i++ )
+			{
+				fingerprint ^= modVersion.charAt(i);
+				fingerprint *= 0x100000001b3L;
+			}
+		}
+		fingerprint ^= recipeCount;
+		fingerprint *= 0x100000001b3L;
+		fingerprint ^= DeclarativeRecipeHandlers.getDeclarationsHash();
+		fingerprint *= 0x100000001b3L;
+		return fingerprint;
+	}
+
+
+	/**
+	 * The analysed recipes loaded from the snapshot file
+	 *
+	 */
+	static class LoadedSnapshot
+	{
+		/** the analysed recipes for each recipe in the list, with null entries for the recipes which need to be analysed again */
+		final IndexedRecipe[][] analysedRecipes;
+		/** the time it took to analyse the recipes when the snapshot was saved, in milliseconds */
+		final long analysisTime;
+
+		private LoadedSnapshot(IndexedRecipe[][] analysedRecipes, long analysisTime)
+		{
+			this.analysedRecipes = analysedRecipes;
+			this.analysisTime = analysisTime;
+		}
+	}
+
+
+	/**
+	 * Computes a hash of the ingredients of a vanilla or ore dictionary recipe. Only the first ore of each ore list is hashed, as that's all
+	 * the crafting grid template takes from it. Other recipes are covered by the fingerprint (through the mod versions and the declarations
+	 * hash), and recipes whose crafting grid isn't cached don't need to be checked, as their grid is obtained on each lookup.
+	 * @param nameHashes The hashes of the registry names of the items hashed so far, which are shared by all of the recipes
+	 */
+	private static long getIngredientsHash(IRecipe recipe, Map<Item, Integer> nameHashes)
+	{
+		long hash = 0xcbf29ce484222325L;
+		if (recipe instanceof ShapedRecipes)
+		{
+			ShapedRecipes shapedRecipe = (ShapedRecipes)recipe;
+			hash = hashInt(hash, shapedRecipe.recipeWidth);
+			hash = hashInt(hash, shapedRecipe.recipeHeight);
+			hash = hashIngredients(hash, Arrays.asList(shapedRecipe.recipeItems), nameHashes);
+		}
+		else if (recipe instanceof ShapelessRecipes)
+		{
+			hash = hashIngredients(hash, ((ShapelessRecipes)recipe).recipeItems, nameHashes);
+		}
+		else if (recipe instanceof ShapedOreRecipe)
+		{
+			ShapedOreRecipe shapedRecipe = (ShapedOreRecipe)recipe;
+			hash = hashInt(hash, shapedRecipe.getWidth());
+			hash = hashInt(hash, shapedRecipe.getHeight());
+			hash = hashIngredients(hash, Arrays.asList(shapedRecipe.getInput()), nameHashes);
+		}
+		else if (recipe instanceof ShapelessOreRecipe)
+		{
+			hash = hashIngredients(hash, ((ShapelessOreRecipe)recipe).getInput(), nameHashes);
+		}
+		return hash;
+	}
+
+	private static long hashIngredients(long hash, List<?> ingredients, Map<Item, Integer> nameHashes)
+	{
+		hash = hashInt(hash, ingredients.size());
+		for ( Object ingredient : ingredients )
+		{
+			if (ingredient instanceof ItemStack) hash = hashItemStack(hash, (ItemStack)ingredient, nameHashes);
+			else if (ingredient instanceof List)
+			{
+				List<?> ores = (List<?>)ingredient;
+				if (ores.isEmpty()) hash = hashInt(hash, -1);
+				else hash = hashItemStack(hash, (ItemStack)ores.get(0), nameHashes);
+			}
+			else hash = hashInt(hash, 0);
+		}
+		return hash;
+	}
+
+	private static long hashItemStack(long hash, ItemStack itemStack, Map<Item, Integer> nameHashes)
+	{
+		if (itemStack == null || itemStack.isEmpty()) return hashInt(hash, 0);
+
+		// the registry name is used rather than the item id, as ids can differ between worlds
+		Item item = itemStack.getItem();
+		Integer nameHash = nameHashes.get(item);
+		if (nameHash == null)
+		{
+			nameHash = item.getRegistryName().toString().hashCode();
+			nameHashes.put(item, nameHash);
+		}
+
+		hash = hashInt(hash, nameHash);
+		hash = hashInt(hash, itemStack.getItemDamage());
+		hash = hashInt(hash, itemStack.getCount());
+		return hashInt(hash, (itemStack.hasTagCompound() ? itemStack.getTagCompound().hashCode() : 0));
+	}
+
+	private static long hashInt(long hash, int value)
+	{
+		// 64-bit FNV-1a, one int at a time
+		hash ^= value;
+		hash *= 0x100000001b3L;
+		return hash;
+	}
+
+
+	/**
+	 * Loads the analysed recipes for a recipe list from the snapshot file.
+	 * @return The analysed recipes, or null if the snapshot doesn't exist or doesn't match the recipe list
+	 */
+	static LoadedSnapshot load(List<IRecipe> recipeList)
+	{
+		File snapshotFile = getSnapshotFile();
+		if (!snapshotFile.isFile()) return null;
+
+		try
+		{
+			ByteBuffer buffer;
+			RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+			try
+			{
+				buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			}
+			finally
+			{
+				file.close();
+			}
+
+			LoadedSnapshot snapshot = read(new DataInputStream(new ByteBufferInputStream(buffer)), recipeList);
+			if (snapshot == null)
+			{
+				ModUncrafting.instance.getLogger().info("Recipe index snapshot doesn't match the loaded mods and recipes, analysing recipes");
+			}
+			return snapshot;
+		}
+		catch (Exception ex)
+		{
+			ModUncrafting.instance.getLogger().warn("Unable to load the recipe index snapshot, analysing recipes", ex);
+			return null;
+		}
+	}
+
+	private static LoadedSnapshot read(DataInputStream input, List<IRecipe> recipeList) throws IOException
+	{
+		// check the header
+		if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) return null;
+		if (input.readLong() != getFingerprint(recipeList.size()) || input.readInt() != recipeList.size()) return null;
+		long analysisTime = input.readLong();
+
+		// read the string table
+		String[] names = new String[input.readInt()];
+		for ( int i = 0 ; i < names.length ; i++ )
+		{
+			names[i] = input.readUTF();
+		}
+		Item[] items = new Item[names.length];
+
+		// read the entries, checking each one against the recipe it was saved for
+		Map<Item, Integer> nameHashes = new IdentityHashMap<Item, Integer>();
+		IndexedRecipe[][] analysedRecipes = new IndexedRecipe[recipeList.size()][];
+		for ( int i = 0 ; i < analysedRecipes.length ; i++ )
+		{
+			IRecipe recipe = recipeList.get(i);
+			if (!recipe.getClass().getName().equals(names[input.readInt()])) return null;
+
+			// an entry which doesn't match its recipe is still read, but the recipe is left to be analysed again
+			RecipeHandler handler = RecipeHandlers.HANDLERS.get(recipe.getClass());
+			boolean valid = (input.readLong() == getIngredientsHash(recipe, nameHashes));
+
+			UncraftingGrid craftingGrid = null;
+			int flags = input.readUnsignedByte();
+			if ((flags & FLAG_TEMPLATE) != 0)
+			{
+				ItemStack[] stacks = new ItemStack[input.readUnsignedByte()];
+				for ( int j = 0 ; j < stacks.length ; j++ )
+				{
+					stacks[j] = readItemStack(input, names, items);
+					if (stacks[j] == null) valid = false;
+				}
+				int containerItemMask = input.readInt();
+				if (valid) craftingGrid = UncraftingGrid.of(stacks, containerItemMask);
+			}
+
+			// recipes which can't be used for uncrafting are saved without a crafting grid, whatever their handler
+			int outputCount = input.readUnsignedShort();
+			if (outputCount == 0)
+			{
+				if (valid) analysedRecipes[i] = RecipeIndex.NO_RECIPES;
+				continue;
+			}
+
+			// the handler must still agree on whether the crafting grid can be cached
+			boolean cacheable = (handler != null && handler.isCraftingGridCacheable());
+			if (cacheable != ((flags & FLAG_TEMPLATE) != 0)) valid = false;
+
+			ItemStack recipeOutput = recipe.getRecipeOutput();
+			IndexedRecipe[] indexedRecipes = new IndexedRecipe[outputCount];
+			for ( int j = 0 ; j < outputCount ; j++ )
+			{
+				ItemStack outputStack = readItemStack(input, names, items);
+				if (outputStack == null || outputStack.isEmpty()) valid = false;
+
+				// a recipe with a fixed output must still produce the same stack
+				else if (recipeOutput != null && !recipeOutput.isEmpty() && !ItemStack.areItemStacksEqual(recipeOutput, outputStack)) valid = false;
+
+				if (valid) indexedRecipes[j] = new IndexedRecipe(recipe, outputStack, handler, craftingGrid);
+			}
+			if (valid) analysedRecipes[i] = indexedRecipes;
+		}
+		return new LoadedSnapshot(analysedRecipes, analysisTime);
+	}
+
+	/**
+	 * Reads an item stack, returning null if the item no longer exists
+	 * @param items The items which have been looked up for each name in the string table so far
+	 */
+	private static ItemStack readItemStack(DataInputStream input, String[] names, Item[] items) throws IOException
+	{
+		int nameIndex = input.readInt();
+		if (nameIndex < 0) return ItemStack.EMPTY;
+
+		int count = input.readShort();
+		int metadata = input.readShort();
+		NBTTagCompound tag = (input.readBoolean() ? CompressedStreamTools.read(input) : null);
+
+		Item item = items[nameIndex];
+		if (item == null)
+		{
+			item = Item.REGISTRY.getObject(new ResourceLocation(names[nameIndex]));
+			if (item == null) return null;
+			items[nameIndex] = item;
+		}
+
+		ItemStack itemStack = new ItemStack(item, count, metadata);
+		itemStack.setTagCompound(tag);
+		return itemStack;
+	}
+
+
+	/**
+	 * Saves the analysed recipes of an index to the snapshot file, unless the index was loaded from the snapshot or has already been saved.
+	 */
+	public static void save(RecipeIndex recipeIndex)
+	{
+		if (!ModConfiguration.useIndexSnapshot || recipeIndex.getGeneration() == 0) return;
+		if (recipeIndex.isLoadedFromSnapshot() || recipeIndex.getGeneration() == savedGeneration) return;
+
+		File snapshotFile = getSnapshotFile();
+		File tempFile = new File(snapshotFile.getParentFile(), snapshotFile.getName() + ".tmp");
+		try
+		{
+			snapshotFile.getParentFile().mkdirs();
+
+			// write the entries first, so that the string table can be written before them
+			Map<String, Integer> names = new LinkedHashMap<String, Integer>();
+			ByteArrayOutputStream entries = new ByteArrayOutputStream();
+			writeEntries(new DataOutputStream(entries), recipeIndex, names);
+
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			try
+			{
+				output.writeInt(MAGIC);
+				output.writeInt(FORMAT_VERSION);
+				output.writeLong(getFingerprint(recipeIndex.getRecipeCount()));
+				output.writeInt(recipeIndex.getRecipeCount());
+				output.writeLong(recipeIndex.getAnalysisTime());
+
+				output.writeInt(names.size());
+				for ( String name : names.keySet() )
+				{
+					output.writeUTF(name);
+				}
+
+				entries.writeTo(output);
+			}
+			finally
+			{
+				output.close();
+			}
+
+			Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			savedGeneration = recipeIndex.getGeneration();
+		}
+		catch (Exception ex)
+		{
+			ModUncrafting.instance.getLogger().warn("Unable to save the recipe index snapshot", ex);
+			tempFile.delete();
+		}
+	}
+
+	private static void writeEntries(DataOutputStream output, RecipeIndex recipeIndex, Map<String, Integer> names) throws IOException
+	{
+		List<IRecipe> recipeList = recipeIndex.getRecipeList();
+		IndexedRecipe[][] analysedRecipes = recipeIndex.getAnalysedRecipes();
+
+		Map<Item, Integer> nameHashes = new IdentityHashMap<Item, Integer>();
+		for ( int i = 0 ; i < analysedRecipes.length ; i++ )
+		{
+			IRecipe recipe = recipeList.get(i);
+			output.writeInt(getNameIndex(recipe.getClass().getName(), names));
+			output.writeLong(getIngredientsHash(recipe, nameHashes));
+
+			IndexedRecipe[] indexedRecipes = analysedRecipes[i];
+
+			// all of the outputs of a recipe share the same crafting grid template
+			UncraftingGrid craftingGrid = (indexedRecipes.length > 0 ? indexedRecipes[0].getCraftingGridTemplate() : null);
+			if (craftingGrid != null)
+			{
+				output.writeByte(FLAG_TEMPLATE);
+				output.writeByte(craftingGrid.size());
+				for ( ItemStack itemStack : craftingGrid )
+				{
+					writeItemStack(output, itemStack, names);
+				}
+				output.writeInt(craftingGrid.getContainerItemMask());
+			}
+			else output.writeByte(0);
+
+			output.writeShort(indexedRecipes.length);
+			for ( IndexedRecipe indexedRecipe : indexedRecipes )
+			{
+				writeItemStack(output, indexedRecipe.getRecipeOutput(), names);
+			}
+		}
+	}
+
+	private static void writeItemStack(DataOutputStream output, ItemStack itemStack, Map<String, Integer> names) throws IOException
+	{
+		if (itemStack.isEmpty())
+		{
+			output.writeInt(-1);
+			return;
+		}
+
+		output.writeInt(getNameIndex(itemStack.getItem().getRegistryName().toString(), names));
+		output.writeShort(itemStack.getCount());
+		output.writeShort(itemStack.getMetadata());
+		output.writeBoolean(itemStack.hasTagCompound());
+		if (itemStack.hasTagCompound()) CompressedStreamTools.write(itemStack.getTagCompound(), output);
+	}
+
+	private static int getNameIndex(String name, Map<String, Integer> names)
+	{
+		Integer index = names.get(name);
+		if (index == null)
+		{
+			index = names.size();
+			names.put(name, index);
+		}
+		return index;
+	}
+
+
+
+	/**
+	 * Input stream which reads from a (memory mapped) byte buffer
+	 *
+	 */
+	private static class ByteBufferInputStream extends InputStream
+	{
+		private final ByteBuffer buffer;
+
+		private ByteBufferInputStream(ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read()
+		{
+			return (buffer.hasRemaining() ? buffer.get() & 0xFF : -1);
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length)
+		{
+			if (!buffer.hasRemaining()) return -1;
+
+			length = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, length);
+			return length;
+		}
+
+		@Override
+		public int available()
+		{
+			return buffer.remaining();
+		}
+	}
+
+}
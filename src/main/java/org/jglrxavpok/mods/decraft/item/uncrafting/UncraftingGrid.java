@@ -0,0 +1,103 @@
+package org.jglrxavpok.mods.decraft.item.uncrafting;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.NonNullList;
+
+
+/**
+ * An immutable crafting grid, used as a template for the crafting grids of recipes which don't depend on the input stack,
+ * and for the crafting grids of uncrafting results. The number of filled slots and the slots containing items with container items
+ * are computed when the grid is created. The stacks in the grid are shared, and must be copied before being placed into an inventory.
+ *
+ */
+public class UncraftingGrid extends NonNullList<ItemStack>
+{
+
+	public static final UncraftingGrid EMPTY = new UncraftingGrid(new ItemStack[0], 0);
+
+
+	private final int filledSlotCount;
+	private final int containerItemMask;
+
+
+	private UncraftingGrid(ItemStack[] stacks, int containerItemMask)
+	{
+		super(Collections.unmodifiableList(Arrays.asList(stacks)), ItemStack.EMPTY);
+
+		int filledSlotCount = 0;
+		for ( ItemStack stack : stacks )
+		{
+			if (!stack.isEmpty()) filledSlotCount++;
+		}
+		this.filledSlotCount = filledSlotCount;
+		this.containerItemMask = containerItemMask;
+	}
+
+	/**
+	 * Creates an immutable grid containing the given stacks.
+	 */
+	public static UncraftingGrid of(List<ItemStack> stacks)
+	{
+		if (stacks instanceof UncraftingGrid) return (UncraftingGrid)stacks;
+		if (stacks.isEmpty()) return EMPTY;
+
+		int containerItemMask = 0;
+		for ( int i = 0 ; i < stacks.size() ; i++ )
+		{
+			ItemStack stack = stacks.get(i);
+			if (!stack.isEmpty() && stack.getItem().hasContainerItem(stack)) containerItemMask |= (1 << i);
+		}
+		return new UncraftingGrid(stacks.toArray(new ItemStack[stacks.size()]), containerItemMask);
+	}
+
+	/**
+	 * Creates an immutable grid containing the given stacks, using a previously computed container item mask.
+	 */
+	static UncraftingGrid of(ItemStack[] stacks, int containerItemMask)
+	{
+		if (stacks.length == 0) return EMPTY;
+		return new UncraftingGrid(stacks, containerItemMask);
+	}
+
+	/**
+	 * Returns the number of slots in the grid which contain an item
+	 */
+	public int getFilledSlotCount()
+	{
+		return filledSlotCount;
+	}
+
+	/**
+	 * Returns a bit mask of the slots in the grid which contain an item with a container item (e.g. a milk bucket)
+	 */
+	public int getContainerItemMask()
+	{
+		return containerItemMask;
+	}
+
+	/**
+	 * Returns true if any of the slots in the grid contain an item with a container item
+	 */
+	public boolean hasContainerItems()
+	{
+		return containerItemMask != 0;
+	}
+
+	/**
+	 * Returns a modifiable copy of a crafting grid. The stacks themselves are not copied.
+	 */
+	public static NonNullList<ItemStack> copyOf(List<ItemStack> stacks)
+	{
+		NonNullList<ItemStack> craftingGrid = NonNullList.<ItemStack>withSize(stacks.size(), ItemStack.EMPTY);
+		for ( int i = 0 ; i < stacks.size() ; i++ )
+		{
+			craftingGrid.set(i, stacks.get(i));
+		}
+		return craftingGrid;
+	}
+
+}
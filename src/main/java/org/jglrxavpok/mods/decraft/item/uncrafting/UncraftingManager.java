@@ -2,19 +2,17 @@ package org.jglrxavpok.mods.decraft.item.uncrafting;
 
 import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.jglrxavpok.mods.decraft.ModUncrafting;
+import org.jglrxavpok.mods.decraft.common.config.ExcludedItemsMatcher;
 import org.jglrxavpok.mods.decraft.common.config.ModConfiguration;
+import org.jglrxavpok.mods.decraft.item.uncrafting.RecipeIndex.IndexedRecipe;
 import org.jglrxavpok.mods.decraft.item.uncrafting.UncraftingResult.ResultType;
-import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.NBTSensitiveRecipeHandlers.INBTSensitiveRecipeHandler;
-import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.RecipeHandlers;
 import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.RecipeHandlers.RecipeHandler;
 
 import net.minecraft.enchantment.Enchantment;
@@ -23,10 +21,8 @@ import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.init.Items;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
-import net.minecraft.item.crafting.CraftingManager;
 import net.minecraft.item.crafting.IRecipe;
 import net.minecraft.util.NonNullList;
-import net.minecraftforge.oredict.OreDictionary;
 
 
 /**
@@ -44,7 +40,63 @@ public class UncraftingManager
 	 */
 	public static UncraftingResult getUncraftingResult(EntityPlayer player, ItemStack itemStack)
 	{
+		UncraftingResult uncraftingResult = resolveUncraftingResult(itemStack);
+		recalculateResultType(uncraftingResult, player, itemStack);
+		return uncraftingResult;
+	}
+
+	/**
+	 * Performs the recipe lookup and XP cost calculation for an uncrafting operation, without the checks which depend on the player.
+	 * @param itemStack The stack of items being uncrafted
+	 * @return An object containing the crafting grids and XP cost, which must have its result type calculated using recalculateResultType
+	 */
+	public static UncraftingResult resolveUncraftingResult(ItemStack itemStack)
+	{
+		prepareLookup(itemStack);
+		return lookupUncraftingResult(itemStack);
+	}
+
+	/**
+	 * Performs the parts of a lookup which must be done on the server thread: checking whether the recipe list has changed,
+	 * and building the excluded items list, nugget table and damage tables (which read the ore dictionary) that the lookup will use.
+	 */
+	static void prepareLookup(ItemStack itemStack)
+	{
+		// if other mods have changed the crafting recipes since the recipe index was built, start rebuilding it
+		RecipeIndex.checkForChanges();
+
+		ExcludedItemsMatcher.ensureCompiled();
+		NuggetTable.ensureBuilt();
+		prebuildDamageTables(RecipeIndex.getInstance(), itemStack);
+	}
+
+	/**
+	 * Builds the damage tables of every recipe which a lookup for the stack may read, so that the lookup doesn't have to build them
+	 */
+	private static void prebuildDamageTables(RecipeIndex recipeIndex, ItemStack itemStack)
+	{
+		if (!usesDamageTables(itemStack)) return;
+
+		for ( IndexedRecipe indexedRecipe : recipeIndex.getCandidateRecipes(itemStack) )
+		{
+			if (ItemStack.areItemsEqualIgnoreDurability(itemStack, indexedRecipe.getRecipeOutput())) indexedRecipe.prebuildDamageTable(itemStack.getMaxDamage());
+		}
+	}
+
+	/**
+	 * Returns true if the crafting grids for the stack depend on its damage, which is when we're doing a partial material return on a damaged item
+	 */
+	private static boolean usesDamageTables(ItemStack itemStack)
+	{
+		return (ModConfiguration.uncraftMethod == UncraftingMethod.JGLRXAVPOK && itemStack.isItemStackDamageable() && itemStack.isItemDamaged());
+	}
 
+	/**
+	 * Performs the recipe lookup and XP cost calculation once prepareLookup has been called on the server thread.
+	 * Safe to call from a thread other than the server thread, as long as the stack isn't being modified.
+	 */
+	static UncraftingResult lookupUncraftingResult(ItemStack itemStack)
+	{
 		UncraftingResult uncraftingResult = new UncraftingResult();
 
 		// get the crafting grids and minimum stack sizes which could result in the input item
@@ -52,52 +104,17 @@ public class UncraftingManager
 		// determine the xp cost for the uncrafting operation
 		uncraftingResult.experienceCost = getUncraftingXpCost(itemStack);
 
-		// if the minimum stack size is greater than the number of items in the slot
-		if (uncraftingResult.getRecipeCount() > 0 && itemStack.getCount() < uncraftingResult.getMinStackSize())
-		{
-			// set the result type as "not enough items"
-			uncraftingResult.resultType = ResultType.NOT_ENOUGH_ITEMS;
-		}
-		// if no crafting recipe could be found
-		else if (uncraftingResult.getRecipeCount() == 0)
-		{
-			// set the result type as "not uncraftable"
-			uncraftingResult.resultType = ResultType.NOT_UNCRAFTABLE;
-		}
-		// if the player is not in creative mode, and doesn't have enough XP levels
-		else if (!player.capabilities.isCreativeMode && player.experienceLevel < uncraftingResult.experienceCost)
-		{
-			// set the result type as "not enough xp"
-			uncraftingResult.resultType = ResultType.NOT_ENOUGH_XP;
-		}
-		else
-		{
-			// check to see if one of more of the items in the crafting recipe have container items
-			for ( ItemStack recipeStack : uncraftingResult.getCraftingGrid() )
-			{
-				if (recipeStack != ItemStack.EMPTY && recipeStack.getItem().hasContainerItem(recipeStack)) // the hasContainerItem parameter is usually ignored, but some mods (Immersive Engineering) need it to be there
-				{
-					uncraftingResult.resultType = ResultType.NEED_CONTAINER_ITEMS;
-					break;
-				}
-			}
-
-			// if no container items are present, and all the other checks pass
-			if (uncraftingResult.resultType != ResultType.NEED_CONTAINER_ITEMS)
-			{
-				// the uncrafting operation can be performed
-				uncraftingResult.resultType = ResultType.VALID;
-			}
-
-		}
 		return uncraftingResult;
 	}
 
 
+	/**
+	 * Determines the result type from the selected crafting grid, the number of items in the input slot and the player's XP level.
+	 * The crafting grids carry precomputed flags, so each check is a single comparison and the result type can be recalculated
+	 * whenever one of its inputs changes without walking the crafting grid.
+	 */
 	public static void recalculateResultType(UncraftingResult uncraftingResult, EntityPlayer player, ItemStack itemStack)
 	{
-		uncraftingResult.resultType = ResultType.INACTIVE;
-
 		// if the minimum stack size is greater than the number of items in the slot
 		if (uncraftingResult.getRecipeCount() > 0 && itemStack.getCount() < uncraftingResult.getMinStackSize())
 		{
@@ -116,25 +133,16 @@ public class UncraftingManager
 			// set the result type as "not enough xp"
 			uncraftingResult.resultType = ResultType.NOT_ENOUGH_XP;
 		}
+		// if one or more of the items in the crafting recipe have container items
+		else if (uncraftingResult.getCraftingGrid().hasContainerItems())
+		{
+			// set the result type as "need container items"
+			uncraftingResult.resultType = ResultType.NEED_CONTAINER_ITEMS;
+		}
 		else
 		{
-			// check to see if one of more of the items in the crafting recipe have container items
-			for ( ItemStack recipeStack : uncraftingResult.getCraftingGrid() )
-			{
-				if (recipeStack != ItemStack.EMPTY && recipeStack.getItem().hasContainerItem(recipeStack)) // the hasContainerItem parameter is usually ignored, but some mods (Immersive Engineering) need it to be there
-				{
-					uncraftingResult.resultType = ResultType.NEED_CONTAINER_ITEMS;
-					break;
-				}
-			}
-
-			// if no container items are present, and all the other checks pass
-			if (uncraftingResult.resultType != ResultType.NEED_CONTAINER_ITEMS)
-			{
-				// the uncrafting operation can be performed
-				uncraftingResult.resultType = ResultType.VALID;
-			}
-
+			// the uncrafting operation can be performed
+			uncraftingResult.resultType = ResultType.VALID;
 		}
 	}
 
@@ -216,41 +224,86 @@ public class UncraftingManager
 	/**
 	 * Returns the available crafting recipes and associated minimum stack sizes which can be used to perform an uncrafting operation
 	 * @param itemStack The ItemStack containing the target item
-	 * @return A collection of the ItemStack arrays representing the crafting recipe - one element per recipe found
+	 * @return An immutable collection of the immutable crafting grids - one element per recipe found - which may be shared with other results
 	 */
-	private static List<Map.Entry<NonNullList<ItemStack>,Integer>> findMatchingRecipes(ItemStack itemStack)
+	private static List<Map.Entry<UncraftingGrid,Integer>> findMatchingRecipes(ItemStack itemStack)
 	{
-		// initialize a list of tuples to hold the crafting grid and stack sizes
-		List<Map.Entry<NonNullList<ItemStack>,Integer>> list = new ArrayList<Map.Entry<NonNullList<ItemStack>,Integer>>();
+		// if uncrafting of this item is disabled in config, return an empty list
+		if (ExcludedItemsMatcher.isExcluded(itemStack)) return Collections.<Map.Entry<UncraftingGrid,Integer>>emptyList();
 
-		// if uncrafting of this item is disabled in config, return the empty list
-		String itemName = Item.REGISTRY.getNameForObject(itemStack.getItem()).toString();
-		String itemNameWithDamage = itemName + (itemStack.getItemDamage() > 0 ? "," + Integer.toString(itemStack.getItemDamage()) : "");
+		RecipeIndex recipeIndex = RecipeIndex.getInstance();
 
-		if (ArrayUtils.indexOf(ModConfiguration.excludedItems, itemName) >= 0) return list;
-		if (ArrayUtils.indexOf(ModConfiguration.excludedItems, itemNameWithDamage) >= 0) return list;
+		// check the result cache for the crafting grids of a matching stack
+		boolean nbtSensitive = recipeIndex.isNbtSensitive(itemStack.getItem());
+		int damageBucket = getDamageBucket(recipeIndex, itemStack);
 
+		List<Map.Entry<UncraftingGrid,Integer>> craftingGrids = UncraftingResultCache.get(itemStack, damageBucket, nbtSensitive);
+		if (craftingGrids == null)
+		{
+			// if the stack isn't cached, perform the recipe lookup and add the result to the cache
+			craftingGrids = Collections.unmodifiableList(lookupCraftingGrids(recipeIndex, itemStack));
+
+			// (unless the index was replaced during the lookup, in which case the result may already be out of date)
+			if (recipeIndex == RecipeIndex.getInstance()) UncraftingResultCache.put(itemStack, damageBucket, nbtSensitive, craftingGrids);
+		}
+
+		// the list is shared, rather than copied, as the uncrafting result keeps any changes to the crafting grids separately
+		return craftingGrids;
+	}
 
-		// iterate over all the crafting recipes known to the crafting manager
-		List<IRecipe> recipeList = CraftingManager.getInstance().getRecipeList();
-		for ( IRecipe recipe : recipeList )
+
+	/**
+	 * Determines the value which distinguishes stacks of the same item which produce different crafting grids because of their damage
+	 */
+	private static int getDamageBucket(RecipeIndex recipeIndex, ItemStack itemStack)
+	{
+		// the crafting grids only depend on the damage when we're doing a partial material return on a damaged item
+		if (usesDamageTables(itemStack))
+		{
+			// two damage values produce the same crafting grids if they're in the same bucket of every recipe's damage table.
+			// the bucket indexes increase with the damage, so the sum of the indexes identifies the combination of buckets
+			int bucketSum = 0;
+			for ( IndexedRecipe indexedRecipe : recipeIndex.getCandidateRecipes(itemStack) )
+			{
+				if (!ItemStack.areItemsEqualIgnoreDurability(itemStack, indexedRecipe.getRecipeOutput())) continue;
+
+				// if any of the recipes doesn't have a damage table, fall back to using the damage value itself
+				DamageTable damageTable = indexedRecipe.getDamageTable(itemStack.getMaxDamage());
+				if (damageTable == null || itemStack.getItemDamage() > damageTable.getMaxDamage()) return -itemStack.getItemDamage();
+
+				bucketSum += damageTable.getBucket(itemStack.getItemDamage());
+			}
+			return 1 + bucketSum;
+		}
+		return 0;
+	}
+
+
+	/**
+	 * Searches the crafting recipes which produce the input item for the crafting grids that can be used to uncraft it
+	 */
+	private static List<Map.Entry<UncraftingGrid,Integer>> lookupCraftingGrids(RecipeIndex recipeIndex, ItemStack itemStack)
+	{
+		// initialize a list of tuples to hold the crafting grid and stack sizes
+		List<Map.Entry<UncraftingGrid,Integer>> list = new ArrayList<Map.Entry<UncraftingGrid,Integer>>();
+
+
+		// iterate over the crafting recipes which produce the same item as the input stack
+		for ( IndexedRecipe indexedRecipe : recipeIndex.getCandidateRecipes(itemStack) )
 		{
 			// if the current recipe can be used to craft the item
-			ItemStack recipeOutput = recipe.getRecipeOutput();
-			if (recipeOutput.isEmpty()) recipeOutput = RecipeHandler.getPossibleRecipeOutput(recipe, itemStack);
+			IRecipe recipe = indexedRecipe.getRecipe();
+			ItemStack recipeOutput = indexedRecipe.getRecipeOutput();
 
 			if (ItemStack.areItemsEqualIgnoreDurability(itemStack, recipeOutput))
 			{
 				// get an instance of the appropriate handler class for the IRecipe type of the crafting recipe
-				RecipeHandler handler = RecipeHandlers.HANDLERS.get(recipe.getClass());
+				RecipeHandler handler = indexedRecipe.getHandler();
 				if (handler != null)
 				{
-					// if the recipe is nbt sensitive, copy the input itemstack into the recipe handler
-					if (handler instanceof INBTSensitiveRecipeHandler) ((INBTSensitiveRecipeHandler)handler).setInputStack(itemStack.copy());
-
 					// get the minimum stack size required to uncraft, and the itemstacks that comprise the crafting ingredients
 					int minStackSize = recipeOutput.getCount();
-					NonNullList<ItemStack> craftingGrid = handler.getCraftingGrid(recipe);
+					NonNullList<ItemStack> craftingGrid = indexedRecipe.getCraftingGrid(itemStack);
 
 					if (!craftingGrid.isEmpty())
 					{
@@ -258,21 +311,23 @@ public class UncraftingManager
 						if (craftingGridContainsInputItem(itemStack, craftingGrid)) continue;
 
 						// if we're doing a partial material return on a damaged item, remove items from the crafting grid as appropriate
-						if (ModConfiguration.uncraftMethod == UncraftingMethod.JGLRXAVPOK && itemStack.isItemStackDamageable() && itemStack.isItemDamaged())
+						if (usesDamageTables(itemStack))
 						{
-							craftingGrid = removeItemsFromOutputByDamage(itemStack, craftingGrid);
+							craftingGrid = removeItemsFromOutputByDamage(indexedRecipe, itemStack, craftingGrid);
 						}
 
 						// add the stack size and the crafting grid to the results list
-						if (countFilledSlotsInCraftingGrid(craftingGrid) > 0)
+						// (the grid is made immutable, so that it can be shared by every uncrafting result for the same input)
+						UncraftingGrid uncraftingGrid = UncraftingGrid.of(craftingGrid);
+						if (uncraftingGrid.getFilledSlotCount() > 0)
 						{
-							Map.Entry<NonNullList<ItemStack>,Integer> pair = new AbstractMap.SimpleEntry<NonNullList<ItemStack>,Integer>(craftingGrid, minStackSize);
+							Map.Entry<UncraftingGrid,Integer> pair = new AbstractMap.SimpleImmutableEntry<UncraftingGrid,Integer>(uncraftingGrid, minStackSize);
 							list.add(pair);
 						}
 					}
 				}
 				// if we couldn't find a handler class for this IRecipe implementation, write some details to the log for debugging.
-				else ModUncrafting.instance.getLogger().error("findMatchingRecipes :: Unknown IRecipe implementation " + recipe.getClass().getCanonicalName() + " for item " + itemName);
+				else ModUncrafting.instance.getLogger().error("findMatchingRecipes :: Unknown IRecipe implementation " + recipe.getClass().getCanonicalName() + " for item " + Item.REGISTRY.getNameForObject(itemStack.getItem()));
 			}
 		}
 
@@ -280,17 +335,6 @@ public class UncraftingManager
 	}
 
 
-	private static int countFilledSlotsInCraftingGrid(NonNullList<ItemStack> craftingGrid)
-	{
-		int result = 0;
-		for ( int i = 0 ; i < craftingGrid.size() ; i++ )
-		{
-			if (!craftingGrid.get(i).isEmpty()) result++;
-		}
-		return result;
-	}
-
-
 	/**
 	 * Determines whether the crafting grid contains the input item
 	 * @param stack The item being uncrafted
@@ -354,153 +398,18 @@ public class UncraftingManager
 
 	/**
 	 * Modifies the crafting recipe for a damageable item to return some of the ingredients depending on the damage of the input item.
+	 * @param indexedRecipe The recipe for the damageable item
 	 * @param stack The damaged item
-	 * @param craftingGrid The unmodified crafting recipe of the damageable item
-	 * @return The modified crafting recipe with some ingredients removed
-	 */
-	private static NonNullList<ItemStack> removeItemsFromOutputByDamage(ItemStack stack, NonNullList<ItemStack> craftingGrid)
-	{
-		// calculate the percentage durability remaining on the item
-		double damagePercentage = (100 * ((double)stack.getItemDamage() / (double)stack.getMaxDamage()));
-		double durabilityPercentage = 100 - (100 * ((double)stack.getItemDamage() / (double)stack.getMaxDamage()));
-
-		// iterate through the itemstacks in the crafting recipe to determine the unique materials used, and the total number of each item
-		HashMap<String, Map.Entry<ItemStack,Integer>> materials = new HashMap<String, Map.Entry<ItemStack,Integer>>();
-		for ( ItemStack recipeStack : craftingGrid )
-		{
-			if (!recipeStack.isEmpty())
-			{
-				// get the unique identifier string for the item in the current stack, and append a metadata value if appropriate
-				String key = Item.REGISTRY.getNameForObject(recipeStack.getItem()).toString();
-				if (recipeStack.getItemDamage() != 0) key += "," + recipeStack.getItemDamage();
-
-				// if the map already contains a stack for this item, increment the number of items in the map
-				if (materials.containsKey(key))
-				{
-					materials.get(key).setValue(materials.get(key).getValue() + recipeStack.getCount());
-				}
-				// if the map doesn't already contain a stack for this item, add the stack and the number of items in the stack
-				else
-				{
-					Map.Entry<ItemStack,Integer> value = new AbstractMap.SimpleEntry<ItemStack,Integer>(recipeStack.copy(), recipeStack.getCount());
-					value.getKey().setCount(1);
-					materials.put(key, value);
-				}
-			}
-		}
-
-		// for each unique material in the crafting recipe...
-		for ( String key : materials.keySet())
-		{
-			// get the itemstack of the material from the materials map
-			ItemStack materialStack = materials.get(key).getKey();
-
-			// check the ore dictionary to see if this material has a matching nugget
-			ItemStack nuggetStack = getNuggetForOre(materialStack);
-
-
-			int amount = materials.get(key).getValue();
-			int itemCount = 0;
-			int nuggetCount = 0;
-
-			// if the stack contains sticks
-			if (ArrayUtils.contains(OreDictionary.getOreIDs(materialStack), OreDictionary.getOreID("stickWood")))
-			{
-				// calculate the total number of full items which most closely represent the percentage durability remaining on the item
-				// rounding up to the nearest item
-				itemCount = (int)Math.ceil(amount * (durabilityPercentage / 100));
-			}
-			// if the stack contains leather and we should use rabbit hide
-			else if (ModConfiguration.useRabbitHide && ArrayUtils.contains(OreDictionary.getOreIDs(materialStack), OreDictionary.getOreID("leather")))
-			{
-				nuggetStack = new ItemStack(Items.RABBIT_HIDE, 1, 0);
-
-				// calculate the number of pieces of leather and pieces of rabbit hide which most closely represent the percentage durability remaining on the item
-				// rounding down to the nearest piece of rabbit hide
-				itemCount = (int)Math.floor(amount * (durabilityPercentage / 100));
-				nuggetCount = ((int)Math.floor((amount * 4) * (durabilityPercentage / 100))) - (itemCount * 4);
-			}
-			// if we found a nugget item in the ore dictionary
-			else if (nuggetStack != ItemStack.EMPTY)
-			{
-				// calculate the number of full items and nuggets which most closely represent the percentage durability remaining on the item
-				// rounding down to the nearest nugget
-				itemCount = (int)Math.floor(amount * (durabilityPercentage / 100));
-				nuggetCount = ((int)Math.floor((amount * 9) * (durabilityPercentage / 100))) - (itemCount * 9);
-			}
-			// if there's no nugget for this item in the ore dictionary
-			else
-			{
-				// calculate the total number of full items which most closely represent the percentage durability remaining on the item
-				// rounding down to the nearest item
-				itemCount = (int)Math.floor(amount * (durabilityPercentage / 100));
-			}
-
-
-			// ensure that at least one nugget is returned regardless of durability
-			if (ModConfiguration.ensureReturn && itemCount == 0 && nuggetCount == 0 && nuggetStack != null) nuggetCount = 1;
-
-			// flip the item count to become items to remove instead of items to leave
-			itemCount = amount - itemCount;
-
-
-			// remove the items from the crafting grid until we've removed the appropriate number.
-			for ( int i = 0 ; i < craftingGrid.size() ; i++ )
-			{
-				if (craftingGrid.get(i) != null && craftingGrid.get(i).isItemEqual(materialStack))
-				{
-					if (itemCount > 0)
-					{
-						craftingGrid.set(i, ItemStack.EMPTY);
-						itemCount--;
-					}
-					if (itemCount == 0 && nuggetCount > 0)
-					{
-						craftingGrid.set(i, new ItemStack(nuggetStack.getItem(), nuggetCount, nuggetStack.getItemDamage()));
-						nuggetCount = 0;
-					}
-				}
-			}
-
-		}
-
-		return craftingGrid;
-	}
-
-
-	/**
-	 * Helper method to check the ore dictionary for nuggets of the same material type as a gem or an ingot.
-	 * @param oreStack The ItemStack containing ingots or gems we want to match
-	 * @return An ItemStack containing the nugget item if one was found.
+	 * @param recipeGrid The unmodified crafting recipe of the damageable item
+	 * @return A modified copy of the crafting recipe with some ingredients removed
 	 */
-	private static ItemStack getNuggetForOre(ItemStack oreStack)
+	private static NonNullList<ItemStack> removeItemsFromOutputByDamage(IndexedRecipe indexedRecipe, ItemStack stack, NonNullList<ItemStack> recipeGrid)
 	{
-		String[] oreTypes = { "gem", "ingot" };
-
-		int[] oreIds = OreDictionary.getOreIDs(oreStack);
-		for ( int oreId : oreIds )
-		{
-			String oreName = OreDictionary.getOreName(oreId); // e.g. "gemDiamond"
-			String[] oreNameParts = oreName.split("(?=\\p{Upper})"); // e.g. { "gem", "Diamond" }
-
-			if ((oreNameParts.length == 1) || (oreNameParts.length == 2 && ArrayUtils.indexOf(oreTypes, oreNameParts[0]) >= 0))
-			{
-				String oreNamePart = oreNameParts[oreNameParts.length - 1];
-				if (Pattern.matches("^[a-z]+", oreNamePart)) oreNamePart = oreNamePart.substring(0, 1).toUpperCase() + oreNamePart.substring(1); // e.g. "leather" -> "Leather"
-
-				String nuggetName = "nugget" + oreNamePart; // e.g. "nuggetDiamond"
-
-				List<ItemStack> nuggetOres = OreDictionary.getOres(nuggetName);
-				if (!nuggetOres.isEmpty())
-				{
-					ItemStack nuggetOre = nuggetOres.get(0);
-					return nuggetOre;
-				}
+		// if the recipe has a damage table, the crafting grid has already been calculated
+		DamageTable damageTable = indexedRecipe.getDamageTable(stack.getMaxDamage());
+		if (damageTable != null && stack.getItemDamage() <= damageTable.getMaxDamage()) return damageTable.getCraftingGrid(stack.getItemDamage());
 
-			}
-
-		}
-		return ItemStack.EMPTY;
+		return DamageTable.removeItemsByDamage(recipeGrid, stack.getItemDamage(), stack.getMaxDamage());
 	}
 
 
@@ -1,6 +1,9 @@
 package org.jglrxavpok.mods.decraft.item.uncrafting;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -10,20 +13,54 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.util.NonNullList;
 
 
+/**
+ * The result of looking up the crafting recipes for an item in the uncrafting table.
+ * The list of crafting grids and the grids themselves are immutable, and may be shared with the results of other uncrafting tables
+ * containing the same item. Changes made to the crafting grids by this result are held separately, in a copy-on-write overlay.
+ *
+ */
 public class UncraftingResult
 {
 
 	public ResultType resultType;
-	public List<Map.Entry<NonNullList<ItemStack>,Integer>> craftingGrids;
+	public List<Map.Entry<UncraftingGrid,Integer>> craftingGrids;
 	public int experienceCost;
 	public int selectedCraftingGrid;
 
+	/** modified copies of the shared crafting grids, keyed by index, or null if no grids have been modified */
+	private Map<Integer, UncraftingGrid> modifiedCraftingGrids;
+
 	public UncraftingResult()
 	{
 		this.resultType = ResultType.INACTIVE;
-		this.craftingGrids = new ArrayList<Map.Entry<NonNullList<ItemStack>,Integer>>();
+		this.craftingGrids = Collections.<Map.Entry<UncraftingGrid,Integer>>emptyList();
 		this.experienceCost = 0;
 		this.selectedCraftingGrid = 0;
+		this.modifiedCraftingGrids = null;
+	}
+
+	/**
+	 * Creates the client's copy of a result which was resolved on the server, from the crafting grids of all the alternative recipes
+	 * and the minimum stack size for each of them.
+	 */
+	public static UncraftingResult fromServer(ResultType resultType, int experienceCost, int selectedCraftingGrid, List<UncraftingGrid> craftingGrids, int[] minStackSizes)
+	{
+		UncraftingResult result = new UncraftingResult();
+		result.resultType = resultType;
+		result.experienceCost = experienceCost;
+
+		if (craftingGrids.size() > 0)
+		{
+			List<Map.Entry<UncraftingGrid,Integer>> pairs = new ArrayList<Map.Entry<UncraftingGrid,Integer>>(craftingGrids.size());
+			for ( int i = 0 ; i < craftingGrids.size() ; i++ )
+			{
+				pairs.add(new AbstractMap.SimpleImmutableEntry<UncraftingGrid,Integer>(craftingGrids.get(i), minStackSizes[i]));
+			}
+			result.craftingGrids = Collections.unmodifiableList(pairs);
+			result.selectedCraftingGrid = (selectedCraftingGrid < pairs.size() ? selectedCraftingGrid : 0);
+		}
+
+		return result;
 	}
 
 
@@ -42,9 +79,44 @@ public class UncraftingResult
 		return (craftingGrids.size() > 0 ? craftingGrids.get(selectedCraftingGrid).getValue() : 1);
 	}
 
-	public NonNullList<ItemStack> getCraftingGrid()
+	/**
+	 * Returns the selected crafting grid
+	 */
+	public UncraftingGrid getCraftingGrid()
+	{
+		if (craftingGrids.size() == 0) return UncraftingGrid.EMPTY;
+
+		UncraftingGrid craftingGrid = (modifiedCraftingGrids != null ? modifiedCraftingGrids.get(selectedCraftingGrid) : null);
+		return (craftingGrid != null ? craftingGrid : craftingGrids.get(selectedCraftingGrid).getKey());
+	}
+
+	/**
+	 * Returns true if the selected crafting grid has been modified, and differs from the grid shared with other results
+	 */
+	public boolean isCraftingGridModified()
 	{
-		return (craftingGrids.size() > 0 ? craftingGrids.get(selectedCraftingGrid).getKey() : NonNullList.<ItemStack>create());
+		return (modifiedCraftingGrids != null && modifiedCraftingGrids.containsKey(selectedCraftingGrid));
+	}
+
+	/**
+	 * Replaces the crafting grid at the given index with a modified copy
+	 */
+	public void setCraftingGrid(int index, UncraftingGrid craftingGrid)
+	{
+		if (modifiedCraftingGrids == null) modifiedCraftingGrids = new HashMap<Integer, UncraftingGrid>(4);
+		modifiedCraftingGrids.put(index, craftingGrid);
+	}
+
+	/**
+	 * Replaces an item in the selected crafting grid. The grid is copied into the overlay with the item replaced,
+	 * so that the flags of the modified grid are computed again.
+	 */
+	public void setCraftingGridStack(int index, ItemStack stack)
+	{
+		NonNullList<ItemStack> craftingGrid = UncraftingGrid.copyOf(getCraftingGrid());
+		craftingGrid.set(index, stack);
+
+		setCraftingGrid(selectedCraftingGrid, UncraftingGrid.of(craftingGrid));
 	}
 
 
@@ -73,6 +145,7 @@ public class UncraftingResult
 	public enum ResultType
 	{
 		INACTIVE,
+		PENDING,
 		NOT_UNCRAFTABLE,
 		NOT_ENOUGH_ITEMS,
 		NOT_ENOUGH_XP,
@@ -0,0 +1,163 @@
+package org.jglrxavpok.mods.decraft.item.uncrafting;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+
+
+/**
+ * Shared cache of the crafting grids found for an input stack, so that repeatedly placing the same item into the
+ * uncrafting table doesn't repeat the recipe lookup.
+ * Entries are weighted by the number of crafting grids they hold, and the least recently used entries are evicted first.
+ *
+ */
+public class UncraftingResultCache
+{
+
+	private static final CacheStats NO_STATS = new CacheStats(0, 0, 0, 0, 0, 0);
+
+	private static volatile Cache<CacheKey, List<Map.Entry<UncraftingGrid,Integer>>> cache = null;
+	private static int maximumWeight = 0;
+
+
+	/**
+	 * (Re)creates the cache with the given maximum weight, or disables caching if the weight is zero.
+	 * Any existing entries are discarded.
+	 */
+	public static synchronized void configure(int maximumWeight)
+	{
+		if (cache != null && UncraftingResultCache.maximumWeight == maximumWeight)
+		{
+			cache.invalidateAll();
+			return;
+		}
+
+		UncraftingResultCache.maximumWeight = maximumWeight;
+
+		if (maximumWeight > 0)
+		{
+			cache = CacheBuilder.newBuilder()
+				.maximumWeight(maximumWeight)
+				.weigher(new Weigher<CacheKey, List<Map.Entry<UncraftingGrid,Integer>>>()
+				{
+					@Override
+					public int weigh(CacheKey key, List<Map.Entry<UncraftingGrid,Integer>> value)
+					{
+						return 1 + value.size();
+					}
+				})
+				.recordStats()
+				.build();
+		}
+		else cache = null;
+	}
+
+	/**
+	 * Discards all of the cached entries.
+	 */
+	public static void invalidate()
+	{
+		Cache<CacheKey, List<Map.Entry<UncraftingGrid,Integer>>> cache = UncraftingResultCache.cache;
+		if (cache != null) cache.invalidateAll();
+	}
+
+
+	/**
+	 * Returns the cached crafting grids for an input stack, or null if there is no cached entry.
+	 */
+	public static List<Map.Entry<UncraftingGrid,Integer>> get(ItemStack itemStack, int damageBucket, boolean nbtSensitive)
+	{
+		Cache<CacheKey, List<Map.Entry<UncraftingGrid,Integer>>> cache = UncraftingResultCache.cache;
+		if (cache == null) return null;
+
+		return cache.getIfPresent(new CacheKey(itemStack, damageBucket, (nbtSensitive ? itemStack.getTagCompound() : null)));
+	}
+
+	/**
+	 * Stores the crafting grids found for an input stack. The list should not be modified after it has been cached.
+	 */
+	public static void put(ItemStack itemStack, int damageBucket, boolean nbtSensitive, List<Map.Entry<UncraftingGrid,Integer>> craftingGrids)
+	{
+		Cache<CacheKey, List<Map.Entry<UncraftingGrid,Integer>>> cache = UncraftingResultCache.cache;
+		if (cache == null) return;
+
+		// take a copy of the nbt tag, so that later changes to the input stack don't affect the key
+		NBTTagCompound tag = (nbtSensitive && itemStack.hasTagCompound() ? itemStack.getTagCompound().copy() : null);
+		cache.put(new CacheKey(itemStack, damageBucket, tag), craftingGrids);
+	}
+
+
+	/**
+	 * Returns the hit, miss and eviction counts of the cache
+	 */
+	public static CacheStats getStats()
+	{
+		Cache<CacheKey, List<Map.Entry<UncraftingGrid,Integer>>> cache = UncraftingResultCache.cache;
+		return (cache != null ? cache.stats() : NO_STATS);
+	}
+
+	/**
+	 * Returns the number of entries currently in the cache
+	 */
+	public static long getSize()
+	{
+		Cache<CacheKey, List<Map.Entry<UncraftingGrid,Integer>>> cache = UncraftingResultCache.cache;
+		return (cache != null ? cache.size() : 0);
+	}
+
+
+
+	/**
+	 * Cache key identifying an input stack by item, metadata, damage bucket and nbt data.
+	 * Damageable items ignore their metadata, as it only represents the item damage.
+	 *
+	 */
+	private static final class CacheKey
+	{
+		private final Item item;
+		private final int metadata;
+		private final int damageBucket;
+		private final NBTTagCompound tag;
+		private final int hashCode;
+
+		private CacheKey(ItemStack itemStack, int damageBucket, NBTTagCompound tag)
+		{
+			this.item = itemStack.getItem();
+			this.metadata = (itemStack.isItemStackDamageable() ? 0 : itemStack.getItemDamage());
+			this.damageBucket = damageBucket;
+			this.tag = tag;
+
+			int hashCode = System.identityHashCode(item);
+			hashCode = 31 * hashCode + metadata;
+			hashCode = 31 * hashCode + damageBucket;
+			hashCode = 31 * hashCode + (tag != null ? tag.hashCode() : 0);
+			this.hashCode = hashCode;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj) return true;
+			if (!(obj instanceof CacheKey)) return false;
+
+			CacheKey other = (CacheKey)obj;
+			return this.hashCode == other.hashCode && this.item == other.item && this.metadata == other.metadata && this.damageBucket == other.damageBucket
+				&& (this.tag == null ? other.tag == null : this.tag.equals(other.tag));
+		}
+	}
+
+}
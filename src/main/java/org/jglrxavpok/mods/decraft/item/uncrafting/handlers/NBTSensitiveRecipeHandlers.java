@@ -4,12 +4,18 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang3.ArrayUtils;
+import org.jglrxavpok.mods.decraft.item.uncrafting.UncraftingGrid;
 import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.RecipeHandlers.RecipeHandler;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import net.minecraft.init.Items;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemDye;
 import net.minecraft.item.ItemStack;
 import net.minecraft.item.crafting.IRecipe;
+import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.nbt.NBTTagList;
 import net.minecraft.potion.PotionUtils;
@@ -20,31 +26,111 @@ public final class NBTSensitiveRecipeHandlers
 {
 
 	/**
-	 * Interface for a recipe handler where the recipe output depends on the NBT data of the input ItemStack
+	 * Marker interface for a recipe handler where the recipe output depends on the NBT data of the input ItemStack.
+	 * The input stack is passed to getCraftingGrid(IRecipe, ItemStack), and the handler must not keep any state from one call for use by the next.
 	 *
 	 */
 	public static abstract interface INBTSensitiveRecipeHandler
 	{
-		void setInputStack(ItemStack stack);
-
-		ItemStack getInputStack();
 	}
 
 
 	/**
-	 * Abstract base class extending the base recipe handler implementing the INBTSensitiveRecipeHandler interface
+	 * Abstract base class extending the base recipe handler implementing the INBTSensitiveRecipeHandler interface.
+	 * The crafting grids are cached by the parts of the input stack's NBT data which they're derived from, as farms tend to produce
+	 * large numbers of identical stacks. The cached grids are immutable.
 	 *
 	 */
 	public static abstract class NBTSensitiveRecipeHandler extends RecipeHandler implements INBTSensitiveRecipeHandler
 	{
-		protected ItemStack inputStack;
+		private static final int MAXIMUM_CACHE_SIZE = 256;
+
+		private final Cache<GridKey, UncraftingGrid> craftingGrids = CacheBuilder.newBuilder().maximumSize(MAXIMUM_CACHE_SIZE).build();
+
 
 		@Override
-		public void setInputStack(ItemStack stack){ inputStack = stack; }
+		public NonNullList<ItemStack> getCraftingGrid(IRecipe r)
+		{
+			// the crafting grid can't be determined without the input stack
+			return NonNullList.<ItemStack>create();
+		}
 
 		@Override
-		public ItemStack getInputStack(){ return inputStack; }
+		public NonNullList<ItemStack> getCraftingGrid(IRecipe r, ItemStack inputStack)
+		{
+			NBTTagCompound tag = inputStack.getTagCompound();
+			GridKey key = new GridKey(inputStack.getItem(), getGridTag(tag, 0), getGridTag(tag, 1));
+
+			UncraftingGrid craftingGrid = craftingGrids.getIfPresent(key);
+			if (craftingGrid == null)
+			{
+				craftingGrid = UncraftingGrid.of(buildCraftingGrid(r, inputStack));
 
+				// the key is stored with copies of the tags, so that later changes to the input stack don't affect it
+				craftingGrids.put(key.copy(), craftingGrid);
+			}
+			return craftingGrid;
+		}
+
+		/**
+		 * Returns one of the NBT subtrees which the crafting grid is derived from, or null if the stack doesn't have it
+		 * @param tag The NBT data of the input stack, which may be null
+		 * @param index The index of the subtree, either 0 or 1
+		 */
+		protected abstract NBTBase getGridTag(NBTTagCompound tag, int index);
+
+		/**
+		 * Builds the crafting grid for an input stack which isn't in the cache
+		 */
+		protected abstract NonNullList<ItemStack> buildCraftingGrid(IRecipe r, ItemStack inputStack);
+	}
+
+
+	/**
+	 * Cache key identifying an input stack by its item and the NBT subtrees which its crafting grid is derived from
+	 *
+	 */
+	private static final class GridKey
+	{
+		private final Item item;
+		private final NBTBase firstTag;
+		private final NBTBase secondTag;
+		private final int hashCode;
+
+		private GridKey(Item item, NBTBase firstTag, NBTBase secondTag)
+		{
+			this.item = item;
+			this.firstTag = firstTag;
+			this.secondTag = secondTag;
+
+			int hashCode = System.identityHashCode(item);
+			hashCode = 31 * hashCode + (firstTag != null ? firstTag.hashCode() : 0);
+			hashCode = 31 * hashCode + (secondTag != null ? secondTag.hashCode() : 0);
+			this.hashCode = hashCode;
+		}
+
+		private GridKey copy()
+		{
+			return new GridKey(item, (firstTag != null ? firstTag.copy() : null), (secondTag != null ? secondTag.copy() : null));
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj) return true;
+			if (!(obj instanceof GridKey)) return false;
+
+			GridKey other = (GridKey)obj;
+			return this.hashCode == other.hashCode && this.item == other.item
+				&& (this.firstTag == null ? other.firstTag == null : this.firstTag.equals(other.firstTag))
+				&& (this.secondTag == null ? other.secondTag == null : this.secondTag.equals(other.secondTag));
+		}
 	}
 
 
@@ -55,7 +141,15 @@ public final class NBTSensitiveRecipeHandlers
 	public static class FireworksRecipeHandler extends NBTSensitiveRecipeHandler
 	{
 
-		private List<ItemStack> getFireworkStarItems()
+		@Override
+		protected NBTBase getGridTag(NBTTagCompound tag, int index)
+		{
+			// firework stars are derived from the explosion, and rockets from the flight duration and list of explosions
+			if (tag == null || index != 0) return null;
+			return (tag.hasKey("Explosion") ? tag.getTag("Explosion") : tag.getTag("Fireworks"));
+		}
+
+		private List<ItemStack> getFireworkStarItems(ItemStack inputStack)
 		{
 			List<ItemStack> recipeItems = new ArrayList<ItemStack>();
 
@@ -94,7 +188,7 @@ public final class NBTSensitiveRecipeHandlers
 		}
 
 
-		private List<ItemStack> getFireworkRocketItems()
+		private List<ItemStack> getFireworkRocketItems(ItemStack inputStack)
 		{
 			List<ItemStack> recipeItems = new ArrayList<ItemStack>();
 
@@ -118,7 +212,7 @@ public final class NBTSensitiveRecipeHandlers
 
 					ItemStack stack = new ItemStack(Items.FIREWORK_CHARGE, 1);
 					NBTTagCompound stackTag = new NBTTagCompound();
-					stackTag.setTag("Explosion", explosion);
+					stackTag.setTag("Explosion", explosion.copy()); // copy the tag, as the input stack isn't a copy
 					stack.setTagCompound(stackTag);
 
 					recipeItems.add(stack);
@@ -131,12 +225,12 @@ public final class NBTSensitiveRecipeHandlers
 
 
 		@Override
-		public NonNullList<ItemStack> getCraftingGrid(IRecipe r)
+		protected NonNullList<ItemStack> buildCraftingGrid(IRecipe r, ItemStack inputStack)
 		{
 			NonNullList<ItemStack> recipeItems = NonNullList.<ItemStack>create();
 
-	        if (inputStack.getItem() == Items.FIREWORK_CHARGE) recipeItems.addAll(getFireworkStarItems());
-	        if (inputStack.getItem() == Items.FIREWORKS) recipeItems.addAll(getFireworkRocketItems());
+	        if (inputStack.getItem() == Items.FIREWORK_CHARGE) recipeItems.addAll(getFireworkStarItems(inputStack));
+	        if (inputStack.getItem() == Items.FIREWORKS) recipeItems.addAll(getFireworkRocketItems(inputStack));
 
 	        return recipeItems;
 		}
@@ -150,7 +244,15 @@ public final class NBTSensitiveRecipeHandlers
 	public static class TippedArrowRecipeHandler extends NBTSensitiveRecipeHandler
 	{
 		@Override
-		public NonNullList<ItemStack> getCraftingGrid(IRecipe r)
+		protected NBTBase getGridTag(NBTTagCompound tag, int index)
+		{
+			// tipped arrows are derived from the potion type and any custom potion effects
+			if (tag == null) return null;
+			return tag.getTag(index == 0 ? "Potion" : "CustomPotionEffects");
+		}
+
+		@Override
+		protected NonNullList<ItemStack> buildCraftingGrid(IRecipe r, ItemStack inputStack)
 		{
 			NonNullList<ItemStack> recipeItems = NonNullList.<ItemStack>create();
 
@@ -4,8 +4,12 @@ package org.jglrxavpok.mods.decraft.item.uncrafting.handlers;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jglrxavpok.mods.decraft.item.uncrafting.RecipeIndex;
 import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.NBTSensitiveRecipeHandlers.FireworksRecipeHandler;
 import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.NBTSensitiveRecipeHandlers.TippedArrowRecipeHandler;
+import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.external.DeclarativeRecipeHandlers;
 import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.external.IC2RecipeHandlers.ShapedIC2RecipeHandler;
 import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.external.IC2RecipeHandlers.ShapelessIC2RecipeHandler;
 import net.minecraft.init.Items;
@@ -28,18 +32,80 @@ import net.minecraftforge.oredict.ShapelessOreRecipe;
 public final class RecipeHandlers
 {
 
+	/**
+	 * Map from IRecipe implementation classes to values, where a class without an entry of its own uses the entry of its nearest superclass.
+	 * An entry with a null value stops the search, so that a subclass can be excluded from its superclass's entry.
+	 * The resolved value for each class is memoised, and the memo is cleared whenever the entries change.
+	 */
 	public static class RecipeMap<T> extends HashMap<Class<? extends IRecipe>, T>
 	{
+		/** memo values for classes with no entry of their own or from a superclass, and for classes with a null entry */
+		private static final Object NO_VALUE = new Object();
+		private static final Object NULL_VALUE = new Object();
+
+		private final Map<Class<?>, Object> resolved = new ConcurrentHashMap<Class<?>, Object>();
+
 		public T get(Class<? extends IRecipe> key)
 		{
-			T result = super.get(key);
-			while (result == null && key.getSuperclass() != Object.class) // while (result == null && key.getSuperclass() != IRecipe.class)
+			Object result = resolve(key);
+			return (result == NO_VALUE || result == NULL_VALUE ? null : (T)result);
+		}
+
+		/**
+		 * Returns true if the class or one of its superclasses has an entry, even if the entry's value is null
+		 */
+		public boolean hasEntry(Class<? extends IRecipe> key)
+		{
+			return resolve(key) != NO_VALUE;
+		}
+
+		private Object resolve(Class<? extends IRecipe> key)
+		{
+			Object result = resolved.get(key);
+			if (result == null)
 			{
-				key = (Class<? extends IRecipe>)key.getSuperclass();
-				result = super.get(key);
+				result = NO_VALUE;
+				for ( Class<?> recipeClass = key ; recipeClass != null && recipeClass != Object.class ; recipeClass = recipeClass.getSuperclass() )
+				{
+					if (super.containsKey(recipeClass))
+					{
+						T value = super.get(recipeClass);
+						result = (value != null ? value : NULL_VALUE);
+						break;
+					}
+				}
+				resolved.put(key, result);
 			}
 			return result;
 		}
+
+		@Override
+		public T put(Class<? extends IRecipe> key, T value)
+		{
+			resolved.clear();
+			return super.put(key, value);
+		}
+
+		@Override
+		public void putAll(Map<? extends Class<? extends IRecipe>, ? extends T> map)
+		{
+			resolved.clear();
+			super.putAll(map);
+		}
+
+		@Override
+		public T remove(Object key)
+		{
+			resolved.clear();
+			return super.remove(key);
+		}
+
+		@Override
+		public void clear()
+		{
+			resolved.clear();
+			super.clear();
+		}
 	}
 
 
@@ -51,6 +117,7 @@ public final class RecipeHandlers
 	{
 		buildHandlerMap();
 		buildRecipeOutputMap();
+		RecipeIndex.build();
 	}
 
 
@@ -73,6 +140,9 @@ public final class RecipeHandlers
 		if (ShapedIC2RecipeHandler.recipeClass != null) HANDLERS.put(ShapedIC2RecipeHandler.recipeClass, new ShapedIC2RecipeHandler());
 		if (ShapelessIC2RecipeHandler.recipeClass != null) HANDLERS.put(ShapelessIC2RecipeHandler.recipeClass, new ShapelessIC2RecipeHandler());
 
+		// recipe handlers declared in the config directory
+		HANDLERS.putAll(DeclarativeRecipeHandlers.loadHandlers());
+
 	}
 
 	private static void buildRecipeOutputMap()
@@ -82,6 +152,16 @@ public final class RecipeHandlers
 	}
 
 
+	/**
+	 * Returns the known output items for an IRecipe implementation which returns an empty stack from getRecipeOutput(),
+	 * or null if the outputs of the implementation are unknown.
+	 */
+	public static ItemStack[] getPossibleRecipeOutputs(Class<? extends IRecipe> recipeClass)
+	{
+		return RECIPE_OUTPUTS.get(recipeClass);
+	}
+
+
 	/**
 	 * Abstract base class extended by the different types of recipe handler
 	 *
@@ -90,6 +170,34 @@ public final class RecipeHandlers
 	{
 		public abstract NonNullList<ItemStack> getCraftingGrid(IRecipe r);
 
+		/**
+		 * Returns the crafting grid of a recipe for a particular input stack. Handlers whose crafting grid depends on the input stack
+		 * override this method, and must not modify the input stack or keep any state between calls.
+		 */
+		public NonNullList<ItemStack> getCraftingGrid(IRecipe r, ItemStack inputStack)
+		{
+			return getCraftingGrid(r);
+		}
+
+
+		/**
+		 * Returns true if the crafting grid returned by this handler depends only on the recipe, and so can be computed once
+		 * and reused for every lookup.
+		 */
+		public boolean isCraftingGridCacheable()
+		{
+			return false;
+		}
+
+		/**
+		 * Returns true if this handler can safely be used from more than one thread at once.
+		 * Handlers which aren't thread safe are only ever used from a single thread when analysing recipes.
+		 */
+		public boolean isThreadSafe()
+		{
+			return true;
+		}
+
 
 		/**
 		 * Checks a list of known output items from an IRecipe implementation to see if the input stack contains one of those items,
@@ -191,6 +299,12 @@ public final class RecipeHandlers
 	 */
 	public static class ShapedRecipeHandler extends RecipeHandler
 	{
+		@Override
+		public boolean isCraftingGridCacheable()
+		{
+			return true;
+		}
+
 		@Override
 		public NonNullList<ItemStack> getCraftingGrid(IRecipe r)
 		{
@@ -216,6 +330,12 @@ public final class RecipeHandlers
 	 */
 	public static class ShapelessRecipeHandler extends RecipeHandler
 	{
+		@Override
+		public boolean isCraftingGridCacheable()
+		{
+			return true;
+		}
+
 		@Override
 		public NonNullList<ItemStack> getCraftingGrid(IRecipe r)
 		{
@@ -237,6 +357,12 @@ public final class RecipeHandlers
 	 */
 	public static class ShapedOreRecipeHandler extends RecipeHandler
 	{
+		@Override
+		public boolean isCraftingGridCacheable()
+		{
+			return true;
+		}
+
 		@Override
 		public NonNullList<ItemStack> getCraftingGrid(IRecipe r)
 		{
@@ -266,6 +392,12 @@ public final class RecipeHandlers
 	 */
 	public static class ShapelessOreRecipeHandler extends RecipeHandler
 	{
+		@Override
+		public boolean isCraftingGridCacheable()
+		{
+			return true;
+		}
+
 		@Override
 		public NonNullList<ItemStack> getCraftingGrid(IRecipe r)
 		{
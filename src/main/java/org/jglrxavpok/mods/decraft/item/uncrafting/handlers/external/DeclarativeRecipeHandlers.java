@@ -0,0 +1,333 @@
+package org.jglrxavpok.mods.decraft.item.uncrafting.handlers.external;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jglrxavpok.mods.decraft.ModUncrafting;
+import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.RecipeHandlers.RecipeHandler;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import net.minecraft.block.Block;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.crafting.IRecipe;
+import net.minecraft.util.NonNullList;
+import net.minecraftforge.fml.common.Loader;
+import net.minecraftforge.oredict.OreDictionary;
+
+
+/**
+ * Recipe handlers declared in the config/uncraftingtable/recipe_handlers.json file, which allows the IRecipe implementations of other mods
+ * to be uncrafted without a handler being written for each of them. The file contains an array of declarations, for example:
+ * <pre>
+ * [
+ *   { "recipeClass": "com.example.recipe.ShapedExampleRecipe", "shaped": true, "inputs": "input", "width": "getWidth()", "height": "getHeight()" },
+ *   { "recipeClass": "com.example.recipe.ShapelessExampleRecipe", "inputs": "getInput()", "ingredients": "list" }
+ * ]
+ * </pre>
+ * Accessors are field names, or method names followed by "()", and may be private or declared by a superclass of the recipe class.
+ * The inputs accessor must return an array or a list, with one element per slot for shaped recipes. For shaped recipes, the width and height
+ * accessors must return ints, and default to 3 if omitted. The "ingredients" value determines how each element of the inputs is converted to a stack:
+ * <ul>
+ * <li><code>stack</code> - the element is an item stack</li>
+ * <li><code>list</code> - the element is a list or array of alternative item stacks, and the first one is used</li>
+ * <li><code>ore</code> - the element is an ore dictionary name, and the first item registered with the name is used</li>
+ * <li><code>auto</code> (the default) - any of the above, or an item or a block, determined from the type of the element</li>
+ * </ul>
+ * The declarations are compiled into handlers when the handler map is built. Declarations for recipe classes which don't exist
+ * (e.g. because the mod isn't installed) are skipped, and declarations with accessors which can't be resolved are logged and skipped.
+ *
+ */
+public class DeclarativeRecipeHandlers
+{
+
+	private static final int INGREDIENTS_AUTO = 0;
+	private static final int INGREDIENTS_STACK = 1;
+	private static final int INGREDIENTS_LIST = 2;
+	private static final int INGREDIENTS_ORE = 3;
+
+	private static int declarationsHash = 0;
+
+
+	/**
+	 * Reads the declarations file, creating an empty one if it doesn't exist, and compiles the declarations into handlers.
+	 * @return The compiled handlers, keyed by recipe class
+	 */
+	public static Map<Class<? extends IRecipe>, RecipeHandler> loadHandlers()
+	{
+		Map<Class<? extends IRecipe>, RecipeHandler> handlers = new HashMap<Class<? extends IRecipe>, RecipeHandler>();
+
+		File file = new File(new File(Loader.instance().getConfigDir(), ModUncrafting.MODID), "recipe_handlers.json");
+		Declaration[] declarations = readDeclarations(file);
+
+		for ( Declaration declaration : declarations )
+		{
+			if (declaration == null || declaration.recipeClass == null || declaration.inputs == null)
+			{
+				ModUncrafting.instance.getLogger().warn("Skipping recipe handler declaration without a recipeClass or inputs in " + file.getName());
+				continue;
+			}
+
+			try
+			{
+				Class<? extends IRecipe> recipeClass = Class.forName(declaration.recipeClass).asSubclass(IRecipe.class);
+				handlers.put(recipeClass, new DeclaredRecipeHandler(recipeClass, declaration));
+			}
+			catch (ClassNotFoundException ex)
+			{
+				ModUncrafting.instance.getLogger().debug("Skipping recipe handler declaration for " + declaration.recipeClass + " as the class doesn't exist");
+			}
+			catch (Exception ex)
+			{
+				ModUncrafting.instance.getLogger().warn("Unable to compile the recipe handler declaration for " + declaration.recipeClass + ": " + ex);
+			}
+		}
+
+		if (!handlers.isEmpty()) ModUncrafting.instance.getLogger().info("Registered " + handlers.size() + " declared recipe handlers");
+		return handlers;
+	}
+
+	private static Declaration[] readDeclarations(File file)
+	{
+		declarationsHash = 0;
+		try
+		{
+			if (!file.exists())
+			{
+				file.getParentFile().mkdirs();
+				Files.write(file.toPath(), "[\n]\n".getBytes(StandardCharsets.UTF_8));
+				return new Declaration[0];
+			}
+
+			String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+			declarationsHash = json.hashCode();
+
+			Declaration[] declarations = new Gson().fromJson(json, Declaration[].class);
+			return (declarations != null ? declarations : new Declaration[0]);
+		}
+		catch (IOException ex)
+		{
+			ModUncrafting.instance.getLogger().warn("Unable to read " + file.getName(), ex);
+		}
+		catch (JsonParseException ex)
+		{
+			ModUncrafting.instance.getLogger().error("Unable to parse " + file.getName() + ": " + ex.getMessage());
+		}
+		return new Declaration[0];
+	}
+
+	/**
+	 * Returns a hash of the contents of the declarations file, so that data derived from the declared handlers can be checked against it
+	 */
+	public static int getDeclarationsHash()
+	{
+		return declarationsHash;
+	}
+
+
+	/**
+	 * A recipe handler declaration, as read from the declarations file
+	 *
+	 */
+	private static class Declaration
+	{
+		private String recipeClass;
+		private boolean shaped = false;
+		private String inputs;
+		private String width;
+		private String height;
+		private String ingredients = "auto";
+	}
+
+
+	/**
+	 * Reads a value from a recipe using a field or a no argument method, resolved once when the declaration is compiled
+	 *
+	 */
+	private static class Accessor
+	{
+		private final Field field;
+		private final Method method;
+
+		private Accessor(Class<?> recipeClass, String name) throws NoSuchFieldException, NoSuchMethodException
+		{
+			if (name.endsWith("()"))
+			{
+				this.field = null;
+				this.method = findMethod(recipeClass, name.substring(0, name.length() - 2));
+				this.method.setAccessible(true);
+			}
+			else
+			{
+				this.field = findField(recipeClass, name);
+				this.method = null;
+				this.field.setAccessible(true);
+			}
+		}
+
+		private static Field findField(Class<?> recipeClass, String name) throws NoSuchFieldException
+		{
+			for ( Class<?> clazz = recipeClass ; clazz != null ; clazz = clazz.getSuperclass() )
+			{
+				try
+				{
+					return clazz.getDeclaredField(name);
+				}
+				catch (NoSuchFieldException ex) { }
+			}
+			throw new NoSuchFieldException(recipeClass.getName() + "." + name);
+		}
+
+		private static Method findMethod(Class<?> recipeClass, String name) throws NoSuchMethodException
+		{
+			for ( Class<?> clazz = recipeClass ; clazz != null ; clazz = clazz.getSuperclass() )
+			{
+				try
+				{
+					return clazz.getDeclaredMethod(name);
+				}
+				catch (NoSuchMethodException ex) { }
+			}
+			throw new NoSuchMethodException(recipeClass.getName() + "." + name + "()");
+		}
+
+		private Object get(Object recipe) throws Exception
+		{
+			return (field != null ? field.get(recipe) : method.invoke(recipe));
+		}
+
+		private int getInt(Object recipe) throws Exception
+		{
+			return ((Number)get(recipe)).intValue();
+		}
+	}
+
+
+	/**
+	 * Handler compiled from a declaration
+	 *
+	 */
+	private static class DeclaredRecipeHandler extends RecipeHandler
+	{
+		private final boolean shaped;
+		private final Accessor inputs;
+		private final Accessor width;
+		private final Accessor height;
+		private final int ingredients;
+
+		private DeclaredRecipeHandler(Class<? extends IRecipe> recipeClass, Declaration declaration) throws NoSuchFieldException, NoSuchMethodException
+		{
+			this.shaped = declaration.shaped;
+			this.inputs = new Accessor(recipeClass, declaration.inputs);
+			this.width = (declaration.shaped && declaration.width != null ? new Accessor(recipeClass, declaration.width) : null);
+			this.height = (declaration.shaped && declaration.height != null ? new Accessor(recipeClass, declaration.height) : null);
+
+			if ("stack".equals(declaration.ingredients)) this.ingredients = INGREDIENTS_STACK;
+			else if ("list".equals(declaration.ingredients)) this.ingredients = INGREDIENTS_LIST;
+			else if ("ore".equals(declaration.ingredients)) this.ingredients = INGREDIENTS_ORE;
+			else if (declaration.ingredients == null || "auto".equals(declaration.ingredients)) this.ingredients = INGREDIENTS_AUTO;
+			else throw new IllegalArgumentException("unknown ingredients type \"" + declaration.ingredients + "\"");
+		}
+
+		@Override
+		public boolean isCraftingGridCacheable()
+		{
+			return true;
+		}
+
+		@Override
+		public NonNullList<ItemStack> getCraftingGrid(IRecipe r)
+		{
+			try
+			{
+				List<?> inputList = asList(inputs.get(r));
+				if (inputList == null || inputList.size() > 9) return NonNullList.<ItemStack>create();
+
+				NonNullList<ItemStack> recipeStacks = NonNullList.<ItemStack>withSize(inputList.size(), ItemStack.EMPTY);
+				for ( int i = 0 ; i < inputList.size() ; i++ )
+				{
+					ItemStack itemStack = getIngredientStack(inputList.get(i));
+
+					// if an ingredient has no items (e.g. an ore dictionary name with no ores registered) the recipe can't be uncrafted
+					if (itemStack == null) return NonNullList.<ItemStack>create();
+					recipeStacks.set(i, itemStack);
+				}
+
+				if (shaped)
+				{
+					int recipeWidth = (width != null ? width.getInt(r) : 3);
+					int recipeHeight = (height != null ? height.getInt(r) : 3);
+					if (recipeWidth > 3 || recipeHeight > 3 || recipeWidth * recipeHeight > recipeStacks.size()) return NonNullList.<ItemStack>create();
+
+					return reshapeRecipe(copyRecipeStacks(recipeStacks), recipeWidth, recipeHeight);
+				}
+				else return copyRecipeStacks(recipeStacks);
+			}
+			catch (Exception ex)
+			{
+				ModUncrafting.instance.getLogger().catching(ex);
+			}
+			return NonNullList.<ItemStack>create();
+		}
+
+		/**
+		 * Converts an ingredient to an item stack
+		 * @return The item stack, which is empty for an empty slot, or null if the ingredient has no items
+		 */
+		private ItemStack getIngredientStack(Object ingredient)
+		{
+			if (ingredient == null) return ItemStack.EMPTY;
+
+			switch (ingredients)
+			{
+				case INGREDIENTS_STACK:
+					return (ItemStack)ingredient;
+
+				case INGREDIENTS_LIST:
+					return getFirstStack(asList(ingredient));
+
+				case INGREDIENTS_ORE:
+					return getFirstStack(OreDictionary.getOres((String)ingredient, false));
+
+				default:
+					if (ingredient instanceof ItemStack) return (ItemStack)ingredient;
+					if (ingredient instanceof String) return getFirstStack(OreDictionary.getOres((String)ingredient, false));
+					if (ingredient instanceof Item) return new ItemStack((Item)ingredient);
+					if (ingredient instanceof Block) return new ItemStack((Block)ingredient);
+
+					List<?> list = asList(ingredient);
+					if (list != null) return getFirstStack(list);
+
+					throw new IllegalArgumentException("unsupported ingredient type " + ingredient.getClass().getName());
+			}
+		}
+
+		private static ItemStack getFirstStack(List<?> stacks)
+		{
+			if (stacks == null || stacks.isEmpty()) return null;
+			return (ItemStack)stacks.get(0);
+		}
+
+		/**
+		 * Returns the value as a list if it's a list or an object array, otherwise null
+		 */
+		private static List<?> asList(Object value)
+		{
+			if (value instanceof List) return (List<?>)value;
+			if (value instanceof Object[]) return Arrays.asList((Object[])value);
+			if (value != null && value.getClass().isArray()) throw new IllegalArgumentException("unsupported array type " + value.getClass().getName());
+			return null;
+		}
+	}
+
+}
@@ -1,5 +1,7 @@
 package org.jglrxavpok.mods.decraft.item.uncrafting.handlers.external;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
@@ -9,9 +11,49 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.item.crafting.IRecipe;
 import net.minecraft.util.NonNullList;
 
+/**
+ * Handlers for the recipes from the IndustrialCraft2 mod. The IC2 classes, fields and methods are resolved once when the handlers are loaded,
+ * and if any of them can't be resolved, the affected handler's recipe class is left null so that the handler isn't registered.
+ * The crafting grids of the recipes are cached by the recipe index, so the reflection is only done once for each recipe.
+ *
+ */
 public class IC2RecipeHandlers
 {
 
+	/** ic2.api.recipe.IRecipeInput.getInputs(), or null if IC2 isn't loaded */
+	private static final Method getInputsMethod;
+	/** ic2.api.item.IElectricItem, or null if IC2 isn't loaded */
+	private static final Class<?> electricItemClass;
+
+	static
+	{
+		Method method = null;
+		Class<?> itemClass = null;
+		try
+		{
+			method = Class.forName("ic2.api.recipe.IRecipeInput").getMethod("getInputs");
+			itemClass = Class.forName("ic2.api.item.IElectricItem");
+		}
+		catch (ClassNotFoundException ex)
+		{
+			method = null; // IC2 isn't loaded
+		}
+		catch (NoSuchMethodException ex)
+		{
+			method = null;
+			ModUncrafting.instance.getLogger().warn("Unable to resolve IRecipeInput.getInputs, IndustrialCraft2 recipes will not be uncraftable", ex);
+		}
+		getInputsMethod = method;
+		electricItemClass = (method != null ? itemClass : null);
+	}
+
+
+	private static List<ItemStack> getRecipeInputs(Object recipeInput) throws Exception
+	{
+		return (List<ItemStack>)getInputsMethod.invoke(recipeInput);
+	}
+
+
 	/**
 	 * Handler for shaped recipes from the IndustrialCraft2 mod
 	 *
@@ -20,89 +62,108 @@ public class IC2RecipeHandlers
 	{
 		public static Class<? extends IRecipe> recipeClass;
 
+		private static Field inputField;
+		private static Field masksField;
+		private static Field inputWidthField;
+		private static Field inputHeightField;
+
+		@Override
+		public boolean isCraftingGridCacheable()
+		{
+			return true;
+		}
+
+		@Override
+		public boolean isThreadSafe()
+		{
+			return false;
+		}
+
 		static
 		{
-			try
+			if (getInputsMethod != null)
 			{
-				recipeClass = Class.forName("ic2.core.recipe.AdvRecipe").asSubclass(IRecipe.class);
+				try
+				{
+					Class<? extends IRecipe> advRecipeClass = Class.forName("ic2.core.recipe.AdvRecipe").asSubclass(IRecipe.class);
+					inputField = advRecipeClass.getField("input");
+					masksField = advRecipeClass.getField("masks");
+					inputWidthField = advRecipeClass.getField("inputWidth");
+					inputHeightField = advRecipeClass.getField("inputHeight");
+					recipeClass = advRecipeClass;
+				}
+				catch (ClassNotFoundException ex) { }
+				catch (NoSuchFieldException ex)
+				{
+					ModUncrafting.instance.getLogger().warn("Unable to resolve the fields of ic2.core.recipe.AdvRecipe, IndustrialCraft2 shaped recipes will not be uncraftable", ex);
+				}
 			}
-			catch(ClassNotFoundException ex) { }
 		}
 
-		private static List<List<ItemStack>> replaceRecipeInputs(List list)
+		private static List<List<ItemStack>> replaceRecipeInputs(List list) throws Exception
 		{
-			try
+			// *** modified from ic2.jeiIntegration.recipe.crafting.AdvRecipeWrapper ***
+			List<List<ItemStack>> out = new ArrayList(list.size());
+			for (Object recipe : list) // for (IRecipeInput recipe : list)
 			{
-				// *** modified from ic2.jeiIntegration.recipe.crafting.AdvRecipeWrapper ***
-				List<List<ItemStack>> out = new ArrayList(list.size());
-				for (Object recipe : list) // for (IRecipeInput recipe : list)
+				if (recipe == null)
 				{
-					if (recipe == null)
-					{
-						out.add(java.util.Collections.<ItemStack>emptyList()); // out.add(Collections.emptyList());
-					}
-					else
+					out.add(java.util.Collections.<ItemStack>emptyList()); // out.add(Collections.emptyList());
+				}
+				else
+				{
+					List<ItemStack> replace = new ArrayList<ItemStack>(getRecipeInputs(recipe)); // List<ItemStack> replace = new ArrayList(recipe.getInputs());
+					for (ListIterator<ItemStack> it = replace.listIterator(); it.hasNext();)
 					{
-						List<ItemStack> replace = new ArrayList<ItemStack>((List<ItemStack>)(Class.forName("ic2.api.recipe.IRecipeInput").getMethod("getInputs", (Class[])null).invoke(recipe))); // List<ItemStack> replace = new ArrayList(recipe.getInputs());
-						for (ListIterator<ItemStack> it = replace.listIterator(); it.hasNext();)
+						ItemStack stack = it.next();
+						if ((stack != null) && (electricItemClass.isInstance(stack.getItem()))) // if ((stack != null) && ((stack.getItem() instanceof IElectricItem)))
 						{
-							ItemStack stack = it.next();
-							if ((stack != null) && (Class.forName("ic2.api.item.IElectricItem").isInstance(stack.getItem()))) // if ((stack != null) && ((stack.getItem() instanceof IElectricItem)))
-							{
-								it.set(stack.copy()); // it.set(StackUtil.copyWithWildCard(stack));
-							}
+							it.set(stack.copy()); // it.set(StackUtil.copyWithWildCard(stack));
 						}
-						out.add(replace);
 					}
+					out.add(replace);
 				}
-				return out;
-				// *** modified from ic2.jeiIntegration.recipe.crafting.AdvRecipeWrapper ***
 			}
-			catch (Exception ex) { return null; }
+			return out;
+			// *** modified from ic2.jeiIntegration.recipe.crafting.AdvRecipeWrapper ***
 		}
 
-		private static List<List<ItemStack>> getInputs(IRecipe r)
+		private static List<List<ItemStack>> getInputs(IRecipe r) throws Exception
 		{
-			try
+			// *** modified from ic2.jeiIntegration.recipe.crafting.AdvRecipeWrapper ***
+			Object[] input = (Object[])inputField.get(r);
+			int[] masks = (int[])masksField.get(r);
+			int inputWidth = inputWidthField.getInt(r);
+			int inputHeight = inputHeightField.getInt(r);
+
+			int mask = masks[0]; // int mask = this.recipe.masks[0];
+			int itemIndex = 0;
+			List ret = new ArrayList(); // List<IRecipeInput> ret = new ArrayList();
+			for (int i = 0; i < 9; i++)
 			{
-				// *** modified from ic2.jeiIntegration.recipe.crafting.AdvRecipeWrapper ***
-				Object[] input = (Object[])recipeClass.getField("input").get(r);
-				int[] masks = (int[])recipeClass.getField("masks").get(r);
-				int inputWidth = (Integer)(recipeClass.getField("inputWidth").get(r));
-				int inputHeight = (Integer)(recipeClass.getField("inputHeight").get(r));
-
-				int mask = masks[0]; // int mask = this.recipe.masks[0];
-				int itemIndex = 0;
-				List ret = new ArrayList(); // List<IRecipeInput> ret = new ArrayList();
-				for (int i = 0; i < 9; i++)
+				if ((i % 3 < inputWidth) && (i / 3 < inputHeight)) // if ((i % 3 < this.recipe.inputWidth) && (i / 3 < this.recipe.inputHeight))
 				{
-					if ((i % 3 < inputWidth) && (i / 3 < inputHeight)) // if ((i % 3 < this.recipe.inputWidth) && (i / 3 < this.recipe.inputHeight))
+					if ((mask >>> 8 - i & 0x1) != 0)
 					{
-						if ((mask >>> 8 - i & 0x1) != 0)
-						{
-							ret.add(input[(itemIndex++)]); // ret.add(this.recipe.input[(itemIndex++)]);
-						}
-						else
-						{
-							ret.add(null);
-						}
+						ret.add(input[(itemIndex++)]); // ret.add(this.recipe.input[(itemIndex++)]);
+					}
+					else
+					{
+						ret.add(null);
 					}
 				}
-				return replaceRecipeInputs(ret);
-				// *** modified from ic2.jeiIntegration.recipe.crafting.AdvRecipeWrapper ***
 			}
-			catch (Exception ex) { return null; }
+			return replaceRecipeInputs(ret);
+			// *** modified from ic2.jeiIntegration.recipe.crafting.AdvRecipeWrapper ***
 		}
 
 		@Override
 		public NonNullList<ItemStack> getCraftingGrid(IRecipe r)
 		{
-			List<ItemStack> itemStacks = new ArrayList<ItemStack>();
-
-			List<List<ItemStack>> items = getInputs(r);
-			if (items != null)
+			try
 			{
-				for ( List<ItemStack> list : items )
+				List<ItemStack> itemStacks = new ArrayList<ItemStack>();
+				for ( List<ItemStack> list : getInputs(r) )
 				{
 					if (list != null && list.size() > 0)
 					{
@@ -113,17 +174,16 @@ public class IC2RecipeHandlers
 						itemStacks.add(ItemStack.EMPTY);
 					}
 				}
-			}
 
-			try
-			{
-				int inputWidth = (Integer)(recipeClass.getField("inputWidth").get(r));
-				int inputHeight = (Integer)(recipeClass.getField("inputHeight").get(r));
+				int inputWidth = inputWidthField.getInt(r);
+				int inputHeight = inputHeightField.getInt(r);
 
 				return reshapeRecipe(copyRecipeStacks(itemStacks), inputWidth, inputHeight);
 			}
 			catch (Exception ex)
 			{
+				// the crafting grid is only read once, when the recipe is indexed, so this is only logged once for each recipe
+				ModUncrafting.instance.getLogger().warn("Unable to read the inputs of an IndustrialCraft2 shaped recipe with output " + r.getRecipeOutput(), ex);
 				return NonNullList.<ItemStack>withSize(9, ItemStack.EMPTY);
 			}
 		}
@@ -137,29 +197,48 @@ public class IC2RecipeHandlers
 	{
 		public static Class<? extends IRecipe> recipeClass;
 
+		private static Field inputField;
+
+		@Override
+		public boolean isCraftingGridCacheable()
+		{
+			return true;
+		}
+
+		@Override
+		public boolean isThreadSafe()
+		{
+			return false;
+		}
+
 		static
 		{
-			try
+			if (getInputsMethod != null)
 			{
-				recipeClass = Class.forName("ic2.core.recipe.AdvShapelessRecipe").asSubclass(IRecipe.class);
+				try
+				{
+					Class<? extends IRecipe> advShapelessRecipeClass = Class.forName("ic2.core.recipe.AdvShapelessRecipe").asSubclass(IRecipe.class);
+					inputField = advShapelessRecipeClass.getField("input");
+					recipeClass = advShapelessRecipeClass;
+				}
+				catch (ClassNotFoundException ex) { }
+				catch (NoSuchFieldException ex)
+				{
+					ModUncrafting.instance.getLogger().warn("Unable to resolve the fields of ic2.core.recipe.AdvShapelessRecipe, IndustrialCraft2 shapeless recipes will not be uncraftable", ex);
+				}
 			}
-			catch(ClassNotFoundException ex) { }
 		}
 
-		private static List<List<ItemStack>> getInputs(IRecipe r)
+		private static List<List<ItemStack>> getInputs(IRecipe r) throws Exception
 		{
-			try
+			// *** modified from ic2.jeiIntegration.recipe.crafting.AdvShapelessRecipeWrapper ***
+			List<List<ItemStack>> ret = new ArrayList();
+			for (Object input : (Object[])inputField.get(r)) // for (IRecipeInput input : this.recipe.input)
 			{
-				// *** modified from ic2.jeiIntegration.recipe.crafting.AdvShapelessRecipeWrapper ***
-				List<List<ItemStack>> ret = new ArrayList();
-				for (Object input : (Object[])recipeClass.getField("input").get(r)) // for (IRecipeInput input : this.recipe.input)
-				{
-					ret.add( (List<ItemStack>)(Class.forName("ic2.api.recipe.IRecipeInput").getMethod("getInputs", (Class[])null).invoke(input)) ); // ret.add(input.getInputs());
-			    }
-			    return ret;
-				// *** modified from ic2.jeiIntegration.recipe.crafting.AdvShapelessRecipeWrapper ***
+				ret.add(getRecipeInputs(input)); // ret.add(input.getInputs());
 			}
-			catch(Exception ex){ return null; }
+			return ret;
+			// *** modified from ic2.jeiIntegration.recipe.crafting.AdvShapelessRecipeWrapper ***
 		}
 
 
@@ -177,7 +256,8 @@ public class IC2RecipeHandlers
 			}
 			catch (Exception ex)
 			{
-				ModUncrafting.instance.getLogger().catching(ex);
+				// the crafting grid is only read once, when the recipe is indexed, so this is only logged once for each recipe
+				ModUncrafting.instance.getLogger().warn("Unable to read the inputs of an IndustrialCraft2 shapeless recipe with output " + r.getRecipeOutput(), ex);
 			}
 			return NonNullList.<ItemStack>create();
 		}
@@ -1,15 +1,25 @@
 package org.jglrxavpok.mods.decraft.proxy;
 
 import org.jglrxavpok.mods.decraft.ModUncrafting;
+import org.jglrxavpok.mods.decraft.common.command.CommandUncrafting;
+import org.jglrxavpok.mods.decraft.common.config.ConfigFileWatcher;
 import org.jglrxavpok.mods.decraft.common.config.ModConfiguration;
 import org.jglrxavpok.mods.decraft.common.network.ModGuiHandler;
+import org.jglrxavpok.mods.decraft.common.network.message.ConfigHashMessage;
+import org.jglrxavpok.mods.decraft.common.network.message.ConfigRequestMessage;
 import org.jglrxavpok.mods.decraft.common.network.message.ConfigSyncMessage;
+import org.jglrxavpok.mods.decraft.common.network.message.OutputGridMessage;
 import org.jglrxavpok.mods.decraft.common.network.message.RecipeNavigationMessage;
+import org.jglrxavpok.mods.decraft.common.network.message.UncraftingResultMessage;
 import org.jglrxavpok.mods.decraft.init.ModBlocks;
 import org.jglrxavpok.mods.decraft.init.ModItems;
+import org.jglrxavpok.mods.decraft.item.uncrafting.NuggetTable;
+import org.jglrxavpok.mods.decraft.item.uncrafting.RecipeIndex;
+import org.jglrxavpok.mods.decraft.item.uncrafting.RecipeIndexSnapshot;
 import org.jglrxavpok.mods.decraft.item.uncrafting.handlers.RecipeHandlers;
 import org.jglrxavpok.mods.decraft.stats.ModAchievementList;
 
+import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
 import net.minecraftforge.fml.common.network.NetworkRegistry;
 import net.minecraftforge.fml.relauncher.Side;
 
@@ -33,6 +43,10 @@ public class CommonProxy
 		ModUncrafting.instance.getNetwork().registerMessage(RecipeNavigationMessage.MessageHandler.class, RecipeNavigationMessage.class, 0, Side.SERVER);
 		ModUncrafting.instance.getNetwork().registerMessage(ConfigSyncMessage.MessageHandler.class, ConfigSyncMessage.class, 1, Side.CLIENT);
 		ModUncrafting.instance.getNetwork().registerMessage(ConfigSyncMessage.MessageHandler.class, ConfigSyncMessage.class, 2, Side.SERVER);
+		ModUncrafting.instance.getNetwork().registerMessage(OutputGridMessage.MessageHandler.class, OutputGridMessage.class, 3, Side.CLIENT);
+		ModUncrafting.instance.getNetwork().registerMessage(UncraftingResultMessage.MessageHandler.class, UncraftingResultMessage.class, 4, Side.CLIENT);
+		ModUncrafting.instance.getNetwork().registerMessage(ConfigHashMessage.MessageHandler.class, ConfigHashMessage.class, 5, Side.CLIENT);
+		ModUncrafting.instance.getNetwork().registerMessage(ConfigRequestMessage.MessageHandler.class, ConfigRequestMessage.class, 6, Side.SERVER);
 	}
 
 
@@ -60,6 +74,47 @@ public class CommonProxy
 	{
 		// initalize the recipe handlers
 		RecipeHandlers.postInit();
+
+		// build the nugget table from the indexed recipes
+		NuggetTable.build();
+	}
+
+
+	/**
+	 * Called after every mod has finished loading.
+	 */
+	public void loadComplete()
+	{
+		// pick up the ores registered by other mods after the recipe index was built
+		RecipeIndex.refreshOreRecipes();
+	}
+
+
+	/**
+	 * Called when a server (dedicated or integrated) is starting. Register your commands here.
+	 */
+	public void serverStarting(FMLServerStartingEvent event)
+	{
+		// pick up any ores registered since the mods finished loading (e.g. by scripts which run when the server starts)
+		RecipeIndex.refreshOreRecipes();
+
+		// register the admin command
+		event.registerServerCommand(new CommandUncrafting());
+
+		// reload the configuration file when it's changed
+		ConfigFileWatcher.start(event.getServer());
+	}
+
+
+	/**
+	 * Called when a server (dedicated or integrated) is stopping.
+	 */
+	public void serverStopping()
+	{
+		ConfigFileWatcher.stop();
+
+		// save the recipe index, so that the next startup doesn't have to analyse the recipes again
+		RecipeIndexSnapshot.save(RecipeIndex.getInstance());
 	}
 
 }